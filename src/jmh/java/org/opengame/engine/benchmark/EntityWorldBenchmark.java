@@ -0,0 +1,41 @@
+package org.opengame.engine.benchmark;
+
+import org.opengame.engine.ecs.EntityWorld;
+import org.opengame.engine.ecs.MovementSystem;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.opengame.engine.ecs.Components.POSITION;
+import static org.opengame.engine.ecs.Components.VELOCITY;
+
+/**
+ * Movement of entities stored in structure of arrays, compare with SceneTraversalBenchmark.update
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EntityWorldBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    private int entityCount;
+
+    private EntityWorld world;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        world = new EntityWorld();
+        world.addSystem(new MovementSystem());
+        for (int i = 0; i < entityCount; i++) {
+            int entity = world.create(POSITION, VELOCITY);
+            world.setFloats(entity, VELOCITY, 1.0f, 0.5f, 0.25f);
+        }
+    }
+
+    @Benchmark
+    public void update() {
+        world.update(0.05f);
+    }
+}
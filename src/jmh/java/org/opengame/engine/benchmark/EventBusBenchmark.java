@@ -0,0 +1,70 @@
+package org.opengame.engine.benchmark;
+
+import org.opengame.engine.event.EventBus;
+import org.opengame.engine.event.EventType;
+import org.opengame.engine.event.KeyEventData;
+import org.opengame.engine.event.MouseEventData;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Event fan-out to subscribed listeners
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EventBusBenchmark {
+    @Param({"1", "8", "64"})
+    private int listenerCount;
+
+    private KeyEventData keyEvent;
+    private double cursorX;
+
+    @Setup(Level.Trial)
+    public void setup(Blackhole blackhole) {
+        // event bus is a process wide singleton, every trial runs in its own fork
+        for (int i = 0; i < listenerCount; i++) {
+            EventBus.subscribeToEvent(EventType.KEY_PRESSED, blackhole::consume);
+            EventBus.subscribeToEvent(EventType.MOUSE_MOVED, blackhole::consume);
+        }
+        keyEvent = new KeyEventData(32, true);
+        EventBus.setQueued(true);
+    }
+
+    @Benchmark
+    public void broadcastKeyEvent() {
+        EventBus.broadcastEvent(EventType.KEY_PRESSED, keyEvent);
+    }
+
+    /**
+     * Same as GLFW cursor callback, event data is allocated for every motion
+     */
+    @Benchmark
+    public void broadcastMouseMoved() {
+        cursorX += 1;
+        EventBus.broadcastEvent(EventType.MOUSE_MOVED, new MouseEventData(cursorX, 100));
+    }
+
+    /**
+     * One frame of window input: mouse motions coalesced into one event, key press, drain
+     */
+    @Benchmark
+    public void queuedFrame() {
+        for (int i = 0; i < 16; i++) {
+            cursorX += 1;
+            EventBus.publishMouseMoved(cursorX, 100);
+        }
+        EventBus.publishKeyEvent(EventType.KEY_PRESSED, 32, true);
+        EventBus.dispatchQueued();
+    }
+
+    @Benchmark
+    public void broadcastWithoutListeners() {
+        EventBus.broadcastEvent(EventType.KEY_RELEASED, keyEvent);
+    }
+}
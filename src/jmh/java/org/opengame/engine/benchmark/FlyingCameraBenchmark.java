@@ -0,0 +1,65 @@
+package org.opengame.engine.benchmark;
+
+import org.opengame.engine.Engine;
+import org.opengame.engine.camera.FlyingCamera;
+import org.opengame.engine.input.InputState;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_W;
+import static org.lwjgl.glfw.GLFW.GLFW_MOUSE_BUTTON_RIGHT;
+
+/**
+ * Camera rotation and movement driven by polled input state, as in the game loop
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FlyingCameraBenchmark {
+    private Engine engine;
+    private FlyingCamera camera;
+    private double[] cursorPositions;
+    private int eventIndex;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        engine = HeadlessEngine.start();
+        camera = FlyingCamera.createDefault();
+
+        InputState.onButton(GLFW_MOUSE_BUTTON_RIGHT, true);
+        InputState.onKey(GLFW_KEY_W, true);
+
+        // small circular motion keeps pitch inside the clamped range, x and y pairs
+        cursorPositions = new double[128];
+        for (int i = 0; i < cursorPositions.length / 2; i++) {
+            var angle = 2 * Math.PI * i / (cursorPositions.length / 2);
+            cursorPositions[i * 2] = 400 + 20 * Math.cos(angle);
+            cursorPositions[i * 2 + 1] = 300 + 20 * Math.sin(angle);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.shutdown();
+    }
+
+    @Benchmark
+    public void rotate() {
+        eventIndex = (eventIndex + 2) % cursorPositions.length;
+        InputState.onCursor(cursorPositions[eventIndex], cursorPositions[eventIndex + 1]);
+        camera.update();
+        camera.prepareFrame(1.0f);
+        InputState.nextTick();
+    }
+
+    @Benchmark
+    public void move() {
+        camera.update();
+        camera.prepareFrame(1.0f);
+        InputState.nextTick();
+    }
+}
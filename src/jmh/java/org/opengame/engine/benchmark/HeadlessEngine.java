@@ -0,0 +1,34 @@
+package org.opengame.engine.benchmark;
+
+import org.opengame.engine.Engine;
+import org.opengame.engine.app.AppConfig;
+
+/**
+ * Engine on bgfx Noop renderer for benchmarks which touch native calls.
+ * Must be started and stopped on the benchmark thread, bgfx API is single threaded.
+ * Mesh cache is disabled, benchmarks which measure it set own cache directory.
+ */
+public final class HeadlessEngine {
+    /**
+     * Resources are resolved relative to the benchmarks jar (target/) or to target/classes
+     */
+    private static final String WORKING_DIRECTORY = System.getProperty("opengame.workingDirectory", "classes");
+
+    private HeadlessEngine() {
+    }
+
+    public static Engine start() {
+        var config = new AppConfig();
+        config.setHeadless(true);
+        config.setMeshCacheEnabled(false);
+        try {
+            config.setWorkingDirectory(WORKING_DIRECTORY);
+        } catch (Exception e) {
+            throw new RuntimeException("Cannot resolve working directory " + WORKING_DIRECTORY, e);
+        }
+
+        var engine = new Engine();
+        engine.Init(config);
+        return engine;
+    }
+}
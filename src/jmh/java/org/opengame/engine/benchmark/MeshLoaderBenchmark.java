@@ -0,0 +1,74 @@
+package org.opengame.engine.benchmark;
+
+import org.opengame.engine.Engine;
+import org.opengame.engine.asset.AssetManager;
+import org.opengame.engine.scene.Mesh;
+import org.opengame.engine.scene.MeshCache;
+import org.opengame.engine.scene.MeshLoader;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+import static org.lwjgl.bgfx.BGFX.bgfx_frame;
+
+/**
+ * Model import from bundled assets, either through assimp or from warm mesh cache
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MeshLoaderBenchmark {
+    @Param({"models/cube.obj", "models/car.obj"})
+    private String modelPath;
+
+    /**
+     * false - every load is imported by assimp and creates own GPU buffers
+     */
+    @Param({"false", "true"})
+    private boolean cached;
+
+    private Engine engine;
+    private Path cacheDirectory;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        engine = HeadlessEngine.start();
+        if (cached) {
+            cacheDirectory = Files.createTempDirectory("opengame-mesh-cache");
+            MeshCache.setCacheDirectory(cacheDirectory.toString());
+            loadModel();
+        } else {
+            MeshCache.setCacheDirectory(null);
+            // released buffers are destroyed at once, next import can't reuse them by content
+            AssetManager.setBudget(0);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        engine.shutdown();
+        MeshCache.setCacheDirectory(null);
+        if (cacheDirectory != null) {
+            try (var paths = Files.walk(cacheDirectory)) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    @Benchmark
+    public int loadModel() throws IOException {
+        var model = MeshLoader.loadModel(Engine.getWorkingDirectory() + modelPath);
+        var meshCount = model.getMeshes().size();
+        model.getMeshes().forEach(Mesh::dispose);
+        bgfx_frame(false);
+        return meshCount;
+    }
+}
@@ -0,0 +1,51 @@
+package org.opengame.engine.benchmark;
+
+import org.opengame.engine.Engine;
+import org.opengame.engine.object.SceneObject;
+import org.opengame.engine.scene.Scene;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scene update and render traversal overhead, objects do no work themselves
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SceneTraversalBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    private int objectCount;
+
+    private Engine engine;
+    private Scene scene;
+    private float time;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        engine = HeadlessEngine.start();
+        scene = new Scene();
+        for (int i = 0; i < objectCount; i++) {
+            scene.add(new SceneObject());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.shutdown();
+    }
+
+    @Benchmark
+    public void update() {
+        scene.update();
+    }
+
+    @Benchmark
+    public void render() {
+        time += 16.6f;
+        scene.render(time, 16.6f);
+    }
+}
@@ -0,0 +1,58 @@
+package org.opengame.engine.benchmark;
+
+import org.joml.Vector3f;
+import org.opengame.engine.Engine;
+import org.opengame.engine.scene.MeshLoader;
+import org.opengame.engine.scene.Scene;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Culling, sorting and submission of a grid of static cubes drawn one by one or merged into static batches.
+ * Draw calls of the last frame are printed after the trial
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StaticBatchingBenchmark {
+    private static final int GRID_SIZE = 40;
+
+    @Param({"false", "true"})
+    private boolean batched;
+
+    private Engine engine;
+    private Scene scene;
+    private float time;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        engine = HeadlessEngine.start();
+        scene = new Scene();
+        for (int i = 0; i < GRID_SIZE * GRID_SIZE; i++) {
+            var model = MeshLoader.loadModel(Engine.getWorkingDirectory() + "models/cube.obj");
+            model.setPosition(new Vector3f((i % GRID_SIZE) * 3 - 60, 0, (i / GRID_SIZE) * 3 - 75));
+            model.setStatic(true);
+            scene.add(model);
+        }
+        if (batched) {
+            scene.bakeStaticBatches();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.println("batched: " + batched + ", " + scene.getStats());
+        engine.shutdown();
+    }
+
+    @Benchmark
+    public void render() {
+        time += 16.6f;
+        scene.render(time, 16.6f);
+    }
+}
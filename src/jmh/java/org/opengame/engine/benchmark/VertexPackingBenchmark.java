@@ -0,0 +1,88 @@
+package org.opengame.engine.benchmark;
+
+import org.lwjgl.bgfx.BGFXVertexLayout;
+import org.opengame.engine.Engine;
+import org.opengame.engine.render.VertexStream;
+import org.opengame.engine.scene.Mesh;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.lwjgl.bgfx.BGFX.bgfx_frame;
+import static org.lwjgl.system.MemoryUtil.memFree;
+
+/**
+ * Packing of vertex and index data into bgfx buffers
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class VertexPackingBenchmark {
+    @Param({"1000", "100000"})
+    private int vertexCount;
+
+    private Engine engine;
+    private BGFXVertexLayout layout;
+    private float[] positions;
+    private float[] texCoords;
+    private int[] indices;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        engine = HeadlessEngine.start();
+        layout = Mesh.createVertexLayout(false, false, true);
+
+        var random = new Random(42);
+        positions = new float[vertexCount * 3];
+        texCoords = new float[vertexCount * 2];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = random.nextFloat();
+        }
+        for (int i = 0; i < texCoords.length; i++) {
+            texCoords[i] = random.nextFloat();
+        }
+        indices = new int[vertexCount];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = random.nextInt(Math.min(vertexCount, 65535));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        layout.free();
+        engine.shutdown();
+    }
+
+    private VertexStream packVertexStream(BGFXVertexLayout vertexLayout) {
+        var stream = VertexStream.allocate(vertexLayout, vertexCount);
+        for (int i = 0; i < vertexCount; i++) {
+            stream.position(positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2])
+                    .texCoord(texCoords[i * 2], texCoords[i * 2 + 1]);
+        }
+        return stream;
+    }
+
+    @Benchmark
+    public long packVertices() {
+        var buffer = packVertexStream(layout).flip();
+        long checksum = buffer.getLong(0);
+        memFree(buffer);
+        return checksum;
+    }
+
+    @Benchmark
+    public int createAndDisposeMesh() throws IOException {
+        var mesh = new Mesh(packVertexStream(Mesh.createVertexLayout(false, false, true)), indices,
+                "vs_simple_textured", "fs_simple_textured", null);
+        var indexCount = mesh.getIndexCount();
+        mesh.dispose();
+        // let bgfx release destroyed handles
+        bgfx_frame(false);
+        return indexCount;
+    }
+}
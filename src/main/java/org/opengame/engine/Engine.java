@@ -1,7 +1,6 @@
 package org.opengame.engine;
 
 import lombok.Getter;
-import lombok.Setter;
 import lombok.extern.java.Log;
 import lombok.extern.log4j.Log4j2;
 import lombok.extern.slf4j.Slf4j;
@@ -15,10 +14,20 @@ import org.lwjgl.glfw.GLFWNativeX11;
 import org.lwjgl.system.MemoryStack;
 import org.lwjgl.system.Platform;
 import org.opengame.engine.app.AppConfig;
+import org.opengame.engine.asset.AssetManager;
+import org.opengame.engine.asset.AsyncLoader;
+import org.opengame.engine.asset.ResourceLoader;
 import org.opengame.engine.event.EventBus;
 import org.opengame.engine.event.EventType;
-import org.opengame.engine.event.KeyEventData;
-import org.opengame.engine.event.MouseEventData;
+import org.opengame.engine.input.InputState;
+import org.opengame.engine.profiler.FrameEvent;
+import org.opengame.engine.profiler.FrameProfiler;
+import org.opengame.engine.profiler.ProfilerMetric;
+import org.opengame.engine.profiler.ProfilerOverlay;
+import org.opengame.engine.profiler.TickEvent;
+import org.opengame.engine.render.ParallelSceneRenderer;
+import org.opengame.engine.scene.MeshCache;
+import org.opengame.engine.scene.MeshLoader;
 import org.opengame.engine.scene.Scene;
 
 import java.nio.ByteBuffer;
@@ -38,11 +47,27 @@ public class Engine {
     @Getter
     private AppConfig config;
     @Getter
-    @Setter
     private Scene currentScene;
 
-    private float tickTime = 1000;
-    private int msPerUpdate = 1000 / 20;
+    /**
+     * Simulation ticks executed since loop start
+     */
+    @Getter
+    private long tickCount;
+    /**
+     * Ticks skipped because of max catch-up limit
+     */
+    @Getter
+    private long droppedTickCount;
+    @Getter
+    private long frameCount;
+    /**
+     * Position of the current frame between last and next simulation tick, [0, 1)
+     */
+    private float interpolationAlpha;
+
+    private ParallelSceneRenderer parallelRenderer;
+    private ProfilerOverlay profilerOverlay;
 
     /**
      * Init Vulkan context and window
@@ -52,7 +77,42 @@ public class Engine {
         log.info("Working directory: " + config.getWorkingDirectory());
         instance = this;
         this.config = config;
-        initWindow(config);
+        EventBus.setQueued(config.isQueuedEvents());
+        FrameProfiler.setEnabled(config.isProfilerEnabled());
+        if (config.isHeadless()) {
+            log.info("Headless mode, window is not created");
+        } else {
+            initWindow(config);
+        }
+        initRenderer(config);
+        AssetManager.setBudget(config.getAssetCacheBudgetBytes());
+        AsyncLoader.start(config.getLoaderThreads());
+        MeshLoader.setSplitLargeMeshes(config.isSplitLargeMeshes());
+        MeshLoader.setOptimizationStages(config.getMeshOptimizationStages());
+        MeshLoader.setQuantizationTolerances(config.getVertexPositionTolerance(), config.getVertexTexCoordTolerance(),
+                config.isOctahedralNormals() ? config.getVertexNormalTolerance() : 0);
+        if (config.isMeshCacheEnabled()) {
+            MeshCache.setCacheDirectory(config.getMeshCacheDirectory() != null
+                    ? config.getMeshCacheDirectory()
+                    : getUserCacheDirectory() + "/opengame/meshes/");
+        }
+
+        if (config.getRenderThreads() > 1) {
+            parallelRenderer = new ParallelSceneRenderer(config.getRenderThreads());
+        }
+        if (config.isProfilerEnabled() && config.isProfilerOverlay()) {
+            profilerOverlay = new ProfilerOverlay(0, 1);
+        }
+    }
+
+    /**
+     * @return $XDG_CACHE_HOME or ~/.cache
+     */
+    private static String getUserCacheDirectory() {
+        var cacheHome = System.getenv("XDG_CACHE_HOME");
+        return cacheHome != null && !cacheHome.isEmpty()
+                ? cacheHome
+                : System.getProperty("user.home") + "/.cache";
     }
 
     private void initWindow(AppConfig config) {
@@ -69,30 +129,38 @@ public class Engine {
                 config.getAppName(), NULL, NULL);
 
         setupInputCallbacks();
+    }
 
+    private void initRenderer(AppConfig config) {
         try (MemoryStack stack = MemoryStack.stackPush()) {
-            BGFXInit init = BGFXInit.malloc();
+            BGFXInit init = BGFXInit.malloc(stack);
             bgfx_init_ctor(init);
-            init.type(BGFX_RENDERER_TYPE_OPENGL);
+            init.type(config.isHeadless() ? BGFX_RENDERER_TYPE_NOOP : BGFX_RENDERER_TYPE_OPENGL);
             init.resolution(it -> it
                     .width(config.getWindowWidth())
                     .height(config.getWindowHeight())
                     .reset(BGFX_RESET_VSYNC));
+            // one encoder per render worker plus the main thread
+            if (config.getRenderThreads() + 1 > init.limits().maxEncoders()) {
+                init.limits().maxEncoders((short) (config.getRenderThreads() + 1));
+            }
 
-            switch (Platform.get()) {
-                case LINUX:
-                    init.platformData()
-                            .ndt(GLFWNativeX11.glfwGetX11Display())
-                            .nwh(GLFWNativeX11.glfwGetX11Window(windowHandle));
-                    break;
-                case MACOSX:
-                    init.platformData()
-                            .nwh(GLFWNativeCocoa.glfwGetCocoaWindow(windowHandle));
-                    break;
-                case WINDOWS:
-                    init.platformData()
-                            .nwh(GLFWNativeWin32.glfwGetWin32Window(windowHandle));
-                    break;
+            if (!config.isHeadless()) {
+                switch (Platform.get()) {
+                    case LINUX:
+                        init.platformData()
+                                .ndt(GLFWNativeX11.glfwGetX11Display())
+                                .nwh(GLFWNativeX11.glfwGetX11Window(windowHandle));
+                        break;
+                    case MACOSX:
+                        init.platformData()
+                                .nwh(GLFWNativeCocoa.glfwGetCocoaWindow(windowHandle));
+                        break;
+                    case WINDOWS:
+                        init.platformData()
+                                .nwh(GLFWNativeWin32.glfwGetWin32Window(windowHandle));
+                        break;
+                }
             }
 
             if (!bgfx_init(init)) {
@@ -108,6 +176,10 @@ public class Engine {
 
         bgfx_set_debug(BGFX_DEBUG_TEXT);
         bgfx_set_view_clear(0, BGFX_CLEAR_COLOR | BGFX_CLEAR_DEPTH, 0x303030ff, 1.0f, 0);
+        // draws are submitted with their render queue rank as depth
+        bgfx_set_view_mode(0, BGFX_VIEW_MODE_DEPTH_ASCENDING);
+        // view state is kept by bgfx between frames, cameras change it only when they move
+        bgfx_set_view_rect(0, 0, 0, config.getWindowWidth(), config.getWindowHeight());
     }
 
     private void logAvailableRenderers() {
@@ -130,66 +202,229 @@ public class Engine {
                 glfwSetWindowShouldClose(window, true);
             }
             if (action == GLFW_PRESS || action == GLFW_RELEASE) {
-                EventBus.broadcastEvent(EventType.KEY_PRESSED, new KeyEventData(key, action == GLFW_PRESS));
+                InputState.onKey(key, action == GLFW_PRESS);
+                EventBus.publishKeyEvent(EventType.KEY_PRESSED, key, action == GLFW_PRESS);
             }
         });
 
         glfwSetMouseButtonCallback(windowHandle, (window, button, action, mods) -> {
-            EventBus.broadcastEvent(EventType.MOUSE_BUTTON_EVENT, new KeyEventData(button, action == GLFW_PRESS));
+            InputState.onButton(button, action == GLFW_PRESS);
+            EventBus.publishKeyEvent(EventType.MOUSE_BUTTON_EVENT, button, action == GLFW_PRESS);
         });
 
         glfwSetCursorPosCallback(windowHandle, (window, xpos, ypos) -> {
-            EventBus.broadcastEvent(EventType.MOUSE_MOVED, new MouseEventData(xpos, ypos));
+            InputState.onCursor(xpos, ypos);
+            EventBus.publishMouseMoved(xpos, ypos);
+        });
+
+        glfwSetWindowFocusCallback(windowHandle, (window, focused) -> {
+            // release events of keys held while switching windows never come
+            if (!focused) {
+                InputState.reset();
+            }
         });
     }
 
     public static void setCursorPos(Vector2f cursorPos) {
+        if (instance.windowHandle == NULL) return;
         glfwSetCursorPos(instance.windowHandle, cursorPos.x, cursorPos.y);
     }
 
+    /**
+     * Run the main loop. Scene is updated with fixed rate from config, zero or several times per frame,
+     * and rendered once per frame with interpolation alpha between the last two ticks.
+     */
     public void startLoop() {
+        if (config.getTicksPerSecond() <= 0 || config.getMaxTicksPerFrame() <= 0) {
+            throw new IllegalArgumentException("Tick rate and max ticks per frame must be positive");
+        }
+
+        long freq = getTimerFrequency();
+        double toMs = 1000.0 / freq;
+        // accumulated in timer units multiplied by tick rate, one tick is exactly freq - no rounding drift
+        long tickAccumulator = 0;
+
         long lastTime;
-        long startTime = lastTime = glfwGetTimerValue();
-        while (!glfwWindowShouldClose(windowHandle)) {
-            glfwPollEvents();
+        long startTime = lastTime = getTimerValue();
+        tickCount = 0;
+        droppedTickCount = 0;
+        frameCount = 0;
+        while (isRunning(startTime)) {
+            var frameEvent = FrameEvent.isRecording() ? new FrameEvent() : null;
+            if (frameEvent != null) {
+                frameEvent.begin();
+            }
+            long frameDroppedTicks = droppedTickCount;
+            FrameProfiler.beginFrame();
+            try (var scope = FrameProfiler.scope(ProfilerMetric.POLL_EVENTS)) {
+                if (!config.isHeadless()) {
+                    glfwPollEvents();
+                }
+                EventBus.dispatchQueued();
+            }
 
-            long now = glfwGetTimerValue();
+            try (var scope = FrameProfiler.scope(ProfilerMetric.UPLOADS)) {
+                AsyncLoader.processUploads(config.getUploadBudgetBytesPerFrame());
+            }
+
+            long now = getTimerValue();
             long frameTime = now - lastTime;
             lastTime = now;
 
-            double freq = glfwGetTimerFrequency();
-            double toMs = 1000.0 / freq;
-
-            double time = (now - startTime) / freq;
+            double time = (now - startTime) / (double) freq;
 
-            bgfx_set_view_rect(0, 0, 0, config.getWindowWidth(), config.getWindowHeight());
             bgfx_touch(0);
 
             bgfx_dbg_text_clear(0, false);
-            bgfx_dbg_text_printf(0, 1, 0x1f, "Hello bgfx!");
 
-            var frameMs = (float) toMs * frameTime;
-            if (currentScene != null) {
-                if (tickTime >= msPerUpdate) {
-                    currentScene.update();
-                    tickTime = 0;
+            tickAccumulator += frameTime * config.getTicksPerSecond();
+            int frameTicks = 0;
+            while (tickAccumulator >= freq) {
+                if (frameTicks == config.getMaxTicksPerFrame()) {
+                    // spiral of death protection, simulation slows down instead of freezing the frame
+                    droppedTickCount += tickAccumulator / freq;
+                    tickAccumulator %= freq;
+                    break;
+                }
+                var tickEvent = TickEvent.isRecording() ? new TickEvent() : null;
+                if (tickEvent != null) {
+                    tickEvent.begin();
                 }
-                tickTime += frameMs;
-                currentScene.render((float) time, frameMs);
+                try (var scope = FrameProfiler.scope(ProfilerMetric.UPDATE)) {
+                    if (currentScene != null) {
+                        currentScene.update();
+                    }
+                }
+                InputState.nextTick();
+                if (tickEvent != null && tickEvent.shouldCommit()) {
+                    tickEvent.setTick(tickCount);
+                    tickEvent.setFrame(frameCount);
+                    tickEvent.setSceneObjects(currentScene != null ? currentScene.getObjects().size() : 0);
+                    tickEvent.commit();
+                }
+                tickAccumulator -= freq;
+                tickCount++;
+                frameTicks++;
+            }
+            interpolationAlpha = (float) ((double) tickAccumulator / freq);
+
+            var frameMs = (float) (toMs * frameTime);
+            try (var scope = FrameProfiler.scope(ProfilerMetric.RENDER)) {
+                if (currentScene != null) {
+                    if (parallelRenderer != null) {
+                        parallelRenderer.render(currentScene, (float) time, frameMs, interpolationAlpha);
+                    } else {
+                        currentScene.render((float) time, frameMs, interpolationAlpha);
+                    }
+                }
+            }
+            if (profilerOverlay != null) {
+                profilerOverlay.draw();
             }
 
-            bgfx_frame(false);
+            try (var scope = FrameProfiler.scope(ProfilerMetric.BGFX_FRAME)) {
+                bgfx_frame(false);
+            }
+            FrameProfiler.endFrame();
+            if (frameEvent != null && frameEvent.shouldCommit()) {
+                commitFrameEvent(frameEvent, frameTicks, droppedTickCount - frameDroppedTicks);
+            }
+            frameCount++;
+        }
+
+        log.info("Loop finished after " + frameCount + " frames, " + tickCount + " ticks ("
+                + droppedTickCount + " dropped)");
+        if (FrameProfiler.isEnabled()) {
+            log.info("Frame time p50/p95/p99: " + FrameProfiler.getPercentile(ProfilerMetric.FRAME, 50) / 1000
+                    + "/" + FrameProfiler.getPercentile(ProfilerMetric.FRAME, 95) / 1000
+                    + "/" + FrameProfiler.getPercentile(ProfilerMetric.FRAME, 99) / 1000 + " us");
         }
 
+        shutdown();
+    }
+
+    private void commitFrameEvent(FrameEvent event, int frameTicks, long frameDroppedTicks) {
+        event.setFrame(frameCount);
+        event.setTicks(frameTicks);
+        event.setDroppedTicks(frameDroppedTicks);
+        event.setPendingUploads(AsyncLoader.getPendingUploads());
+        if (currentScene != null) {
+            event.setSceneObjects(currentScene.getObjects().size());
+            event.setDrawn(currentScene.getDrawnCount());
+            event.setCulled(currentScene.getCulledCount());
+            event.setDraws(currentScene.getRenderQueue().getSize());
+        }
+        event.commit();
+    }
+
+    /**
+     * Release renderer and window, called at the end of the loop
+     */
+    public void shutdown() {
+        if (parallelRenderer != null) {
+            parallelRenderer.dispose();
+        }
+        AsyncLoader.shutdown();
+        log.info("Assets: " + AssetManager.getStats());
+        log.info("Resources: " + ResourceLoader.getStats());
+        AssetManager.clear();
         bgfx_shutdown();
-        glfwDestroyWindow(windowHandle);
-        glfwTerminate();
+        if (!config.isHeadless()) {
+            glfwDestroyWindow(windowHandle);
+            glfwTerminate();
+        }
+    }
+
+    private boolean isRunning(long startTime) {
+        if (config.getMaxFrames() > 0 && frameCount >= config.getMaxFrames()) {
+            return false;
+        }
+        if (config.getMaxDurationMs() > 0
+                && (getTimerValue() - startTime) * 1000.0 / getTimerFrequency() >= config.getMaxDurationMs()) {
+            return false;
+        }
+        return config.isHeadless() || !glfwWindowShouldClose(windowHandle);
+    }
+
+    /**
+     * GLFW timer is not available without window, system nano time is used instead
+     */
+    private long getTimerValue() {
+        return config.isHeadless() ? System.nanoTime() : glfwGetTimerValue();
+    }
+
+    private long getTimerFrequency() {
+        return config.isHeadless() ? 1_000_000_000L : glfwGetTimerFrequency();
+    }
+
+    /**
+     * @return interpolation factor between previous and current simulation tick for the frame being rendered
+     */
+    public static float getInterpolationAlpha() {
+        return instance.interpolationAlpha;
+    }
+
+    /**
+     * @return duration of one simulation tick in seconds
+     */
+    public static float getTickDuration() {
+        return 1.0f / instance.config.getTicksPerSecond();
     }
 
     public static int getRenderer() {
         return bgfx_get_renderer_type();
     }
 
+    /**
+     * Make the scene current, static meshes are merged into static batches if enabled by the config
+     */
+    public void setCurrentScene(Scene scene) {
+        if (scene != null && config.isStaticBatching()) {
+            scene.bakeStaticBatches();
+        }
+        currentScene = scene;
+    }
+
     public static String getWorkingDirectory() {
         return instance.config.getWorkingDirectory();
     }
@@ -199,7 +434,7 @@ public class Engine {
     }
 
     public static void setScene(Scene scene) {
-        instance.currentScene = scene;
+        instance.setCurrentScene(scene);
     }
 
     public static int getScreenWidth() {
@@ -4,6 +4,7 @@ import lombok.extern.java.Log;
 import org.joml.Vector3f;
 import org.opengame.engine.app.AppConfig;
 import org.opengame.engine.camera.FlyingCamera;
+import org.opengame.engine.scene.InstanceGroup;
 import org.opengame.engine.scene.MeshLoader;
 import org.opengame.engine.render.TestCube;
 import org.opengame.engine.scene.Scene;
@@ -21,6 +22,10 @@ public class TestClient {
         if (args.length > 0) {
             config.setWorkingDirectory(args[0]);
         }
+        if (args.length > 1 && "--headless".equals(args[1])) {
+            config.setHeadless(true);
+            config.setMaxFrames(300);
+        }
         engine.Init(config);
 
         var scene = new Scene();
@@ -47,10 +52,32 @@ public class TestClient {
         model.setPosition(new Vector3f(0, 1, 20));
         scene.add(model);
 
+        // grid of cubes sharing one geometry, drawn with single instanced submit
+        var cubeMesh = MeshLoader.loadModel(Engine.getWorkingDirectory() + "models/cube.obj").getMeshes().get(0);
+        var cubes = new InstanceGroup(cubeMesh);
+        for (int x = 0; x < 10; x++) {
+            for (int z = 0; z < 10; z++) {
+                cubes.addInstance(new Vector3f(x * 3 - 15, -4, 30 + z * 3), new Vector3f(0, x * 0.3f, 0));
+            }
+        }
+        scene.add(cubes);
+
+        // static floor blocks, merged into static batches when the scene becomes current
+        for (int x = 0; x < 10; x++) {
+            for (int z = 0; z < 10; z++) {
+                var block = MeshLoader.loadModel(Engine.getWorkingDirectory() + "models/cube.obj");
+                block.setPosition(new Vector3f(x * 2 - 10, -8, 30 + z * 2));
+                block.setStatic(true);
+                scene.add(block);
+            }
+        }
+
         engine.setCurrentScene(scene);
 
         log.info("Current scene stats: " + scene.getStats());
 
         engine.startLoop();
+
+        log.info("Scene stats after the loop: " + scene.getStats());
     }
 }
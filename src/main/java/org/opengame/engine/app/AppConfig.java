@@ -5,13 +5,16 @@ import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import org.opengame.engine.Engine;
+import org.opengame.engine.scene.MeshOptimizer;
 
 import java.io.File;
 import java.io.UnsupportedEncodingException;
 import java.net.URISyntaxException;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
 import java.util.Objects;
+import java.util.Set;
 
 /**
  * Configuration of the application
@@ -28,6 +31,104 @@ public class AppConfig {
 
     private String workingDirectory;
 
+    /**
+     * Fixed simulation rate, scene is updated with this frequency independently of frame rate
+     */
+    private int ticksPerSecond = 20;
+    /**
+     * Max simulation ticks executed in one frame, the rest of the backlog is dropped
+     * so a slow frame can't make the next one even slower
+     */
+    private int maxTicksPerFrame = 5;
+
+    /**
+     * Threads submitting draw calls, each holds own bgfx encoder for the frame. 1 - render on main thread
+     */
+    private int renderThreads = 1;
+
+    /**
+     * Size of cached GPU assets, unreferenced textures and buffers above it are evicted
+     */
+    private long assetCacheBudgetBytes = 256L * 1024 * 1024;
+
+    /**
+     * Threads reading and importing assets in background
+     */
+    private int loaderThreads = 2;
+    /**
+     * Max bytes of asynchronously loaded assets uploaded to GPU per frame, 0 - unlimited
+     */
+    private long uploadBudgetBytesPerFrame = 8L * 1024 * 1024;
+
+    /**
+     * Keep imported models in binary cache so next loads skip assimp
+     */
+    private boolean meshCacheEnabled = true;
+    /**
+     * Directory of mesh cache files, by default opengame/meshes in the user cache directory
+     * ($XDG_CACHE_HOME or ~/.cache), the working directory usually points into the sources
+     */
+    private String meshCacheDirectory;
+    /**
+     * Split imported meshes with more than 65536 vertices into parts with 16 bit indices,
+     * otherwise such meshes are drawn with 32 bit indices
+     */
+    private boolean splitLargeMeshes = true;
+    /**
+     * Optimization stages run on imported meshes, all by default
+     */
+    private Set<MeshOptimizer.Stage> meshOptimizationStages = EnumSet.allOf(MeshOptimizer.Stage.class);
+    /**
+     * Max error of quantized vertex positions relative to mesh size, meshes exceeding it keep float positions.
+     * 0 - no position quantization
+     */
+    private float vertexPositionTolerance = 1e-4f;
+    /**
+     * Max error of quantized texture coordinates, 0 - no texture coordinate quantization
+     */
+    private float vertexTexCoordTolerance = 1.0f / 8192;
+    /**
+     * Store normals octahedral encoded in two int16 instead of three floats.
+     * Only for custom shaders decoding a_normal, the bundled shaders read float normals
+     */
+    private boolean octahedralNormals = false;
+    /**
+     * Max angle in radians between original and octahedral encoded normals, meshes exceeding it keep float normals
+     */
+    private float vertexNormalTolerance = 1e-3f;
+    /**
+     * Merge static meshes of a scene into static batches when it becomes the current scene
+     */
+    private boolean staticBatching = true;
+
+    /**
+     * Queue input events published by window callbacks and dispatch them once per frame after polling,
+     * consecutive mouse moves are coalesced. false - broadcast every event right away
+     */
+    private boolean queuedEvents = true;
+
+    /**
+     * Record per frame phase timings and bgfx stats
+     */
+    private boolean profilerEnabled = true;
+    /**
+     * Show profiler table in bgfx debug text
+     */
+    private boolean profilerOverlay = true;
+
+    /**
+     * Run without window and GPU using bgfx Noop renderer (CI, benchmarks, servers)
+     */
+    private boolean headless = false;
+    /**
+     * Stop loop after given amount of frames, 0 - unlimited
+     */
+    private long maxFrames = 0;
+    /**
+     * Stop loop after given time in milliseconds, 0 - unlimited
+     */
+    private long maxDurationMs = 0;
+
     public String getWorkingDirectory() {
         if (workingDirectory == null) {
             return Objects.requireNonNull(Engine.class.getResource(".")).getPath() + "../../../";
@@ -0,0 +1,381 @@
+package org.opengame.engine.asset;
+
+import lombok.extern.java.Log;
+import org.lwjgl.bgfx.BGFXTextureInfo;
+import org.lwjgl.bgfx.BGFXVertexLayout;
+import org.lwjgl.system.MemoryStack;
+import org.opengame.engine.profiler.GpuResourceEvent;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import static org.lwjgl.bgfx.BGFX.*;
+import static org.lwjgl.system.MemoryUtil.*;
+
+/**
+ * Shared bgfx resources. Textures and programs are deduplicated by file names,
+ * vertex and index buffers by content. Every acquire must be paired with release.
+ * Unreferenced assets stay resident and are evicted in least recently used order
+ * when resident size exceeds the budget.
+ */
+@Log
+public enum AssetManager {
+    INSTANCE;
+
+    public enum AssetType {
+        TEXTURE,
+        PROGRAM,
+        VERTEX_BUFFER,
+        INDEX_BUFFER
+    }
+
+    private static final long DEFAULT_BUDGET_BYTES = 256L * 1024 * 1024;
+
+    /**
+     * Access ordered, first entry is the least recently used
+     */
+    private final LinkedHashMap<String, Asset> assets = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<Integer, Asset> assetsByHandle = new HashMap<>();
+
+    private long budgetBytes = DEFAULT_BUDGET_BYTES;
+    private long residentBytes;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    private static final class Asset {
+        private final AssetType type;
+        private final String key;
+        private final short handle;
+        private final long bytes;
+        /**
+         * Content the buffer was created from, kept for deduplication. bgfx gets own copy because
+         * buffer can be evicted before bgfx processed the create command, which takes up to two frames
+         */
+        private final ByteBuffer data;
+        private int refCount;
+
+        private Asset(AssetType type, String key, short handle, long bytes, ByteBuffer data) {
+            this.type = type;
+            this.key = key;
+            this.handle = handle;
+            this.bytes = bytes;
+            this.data = data;
+        }
+    }
+
+    public static synchronized void setBudget(long budgetBytes) {
+        INSTANCE.budgetBytes = budgetBytes;
+        INSTANCE.evict();
+    }
+
+    public static synchronized short acquireTexture(String fileName) throws IOException {
+        var key = textureKey(fileName);
+        var asset = INSTANCE.lookup(key);
+        if (asset != null) {
+            return asset.handle;
+        }
+
+        return INSTANCE.createTexture(key, ResourceLoader.loadTextureData(fileName));
+    }
+
+    /**
+     * Get texture which file was already read, e.g. by loader thread
+     * @param fileName texture file name
+     * @param textureData file content allocated with MemoryUtil, freed if texture is already resident
+     * @return texture handle
+     */
+    public static synchronized short acquireTexture(String fileName, ByteBuffer textureData) {
+        var key = textureKey(fileName);
+        var asset = INSTANCE.lookup(key);
+        if (asset != null) {
+            memFree(textureData);
+            return asset.handle;
+        }
+
+        return INSTANCE.createTexture(key, textureData);
+    }
+
+    public static synchronized boolean isTextureResident(String fileName) {
+        return INSTANCE.assets.containsKey(textureKey(fileName));
+    }
+
+    public static synchronized short acquireProgram(String vertexShaderName, String fragmentShaderName)
+            throws IOException {
+        var key = "program:" + vertexShaderName + "+" + fragmentShaderName;
+        var asset = INSTANCE.lookup(key);
+        if (asset != null) {
+            return asset.handle;
+        }
+
+        short vertexShader = ResourceLoader.loadShader(vertexShaderName);
+        short fragmentShader = ResourceLoader.loadShader(fragmentShaderName);
+        var event = beginEvent();
+        var handle = bgfx_create_program(vertexShader, fragmentShader, true);
+        return INSTANCE.register(event, AssetType.PROGRAM, key, handle, 0, null);
+    }
+
+    /**
+     * Get vertex buffer with given content, ownership of the data is passed to the asset manager
+     * @param vertices vertex data allocated with MemoryUtil, freed if identical buffer already exists
+     * @param layout vertex layout
+     * @return vertex buffer handle
+     */
+    public static synchronized short acquireVertexBuffer(ByteBuffer vertices, BGFXVertexLayout layout) {
+        var key = "vertices:" + layout.hash() + ":" + vertices.remaining() + ":" + contentHash(vertices);
+        var asset = INSTANCE.lookupData(key, vertices);
+        if (asset != null) {
+            return asset.handle;
+        }
+
+        var event = beginEvent();
+        var handle = bgfx_create_vertex_buffer(Objects.requireNonNull(bgfx_copy(vertices)), layout,
+                BGFX_BUFFER_NONE);
+        return INSTANCE.register(event, AssetType.VERTEX_BUFFER, INSTANCE.uniqueKey(key), handle, vertices.remaining(),
+                vertices);
+    }
+
+    /**
+     * Get index buffer with given content, ownership of the data is passed to the asset manager
+     * @param indices 16 bit indices allocated with MemoryUtil, freed if identical buffer already exists
+     * @return index buffer handle
+     */
+    public static short acquireIndexBuffer(ByteBuffer indices) {
+        return acquireIndexBuffer(indices, false);
+    }
+
+    /**
+     * @param indices packed indices, owned by the asset manager
+     * @param index32 indices are 32 bit values
+     * @return index buffer handle
+     */
+    public static synchronized short acquireIndexBuffer(ByteBuffer indices, boolean index32) {
+        var key = (index32 ? "indices32:" : "indices:") + indices.remaining() + ":" + contentHash(indices);
+        var asset = INSTANCE.lookupData(key, indices);
+        if (asset != null) {
+            return asset.handle;
+        }
+
+        var event = beginEvent();
+        var handle = bgfx_create_index_buffer(Objects.requireNonNull(bgfx_copy(indices)),
+                index32 ? BGFX_BUFFER_INDEX32 : BGFX_BUFFER_NONE);
+        return INSTANCE.register(event, AssetType.INDEX_BUFFER, INSTANCE.uniqueKey(key), handle, indices.remaining(),
+                indices);
+    }
+
+    /**
+     * Add one reference to an acquired asset, e.g. when another object starts to share it
+     * @param type asset type
+     * @param handle handle returned by acquire
+     */
+    public static synchronized void retain(AssetType type, short handle) {
+        var asset = INSTANCE.assetsByHandle.get(handleKey(type, handle));
+        if (asset == null || asset.refCount == 0) {
+            throw new IllegalStateException("Retain of not acquired " + type + " " + handle);
+        }
+        asset.refCount++;
+    }
+
+    /**
+     * @param type vertex or index buffer
+     * @param handle handle returned by acquire
+     * @return view of the content the buffer was created from, valid while the buffer is referenced, must not be modified
+     */
+    public static synchronized ByteBuffer getBufferData(AssetType type, short handle) {
+        var asset = INSTANCE.assetsByHandle.get(handleKey(type, handle));
+        if (asset == null || asset.data == null) {
+            throw new IllegalArgumentException("No data of " + type + " " + handle);
+        }
+        return asset.data.duplicate();
+    }
+
+    /**
+     * Drop one reference, asset stays cached until evicted
+     * @param type asset type
+     * @param handle handle returned by acquire
+     */
+    public static synchronized void release(AssetType type, short handle) {
+        var asset = INSTANCE.assetsByHandle.get(handleKey(type, handle));
+        if (asset == null || asset.refCount == 0) {
+            log.warning("Release of not acquired " + type + " " + handle);
+            return;
+        }
+
+        asset.refCount--;
+        INSTANCE.evict();
+    }
+
+    /**
+     * Destroy all assets, referenced or not. Called on engine shutdown
+     */
+    public static synchronized void clear() {
+        INSTANCE.assets.values().forEach(AssetManager::destroy);
+        INSTANCE.assets.clear();
+        INSTANCE.assetsByHandle.clear();
+        INSTANCE.residentBytes = 0;
+    }
+
+    public static synchronized long getResidentBytes() {
+        return INSTANCE.residentBytes;
+    }
+
+    public static synchronized long getHitCount() {
+        return INSTANCE.hitCount;
+    }
+
+    public static synchronized long getMissCount() {
+        return INSTANCE.missCount;
+    }
+
+    public static synchronized long getEvictionCount() {
+        return INSTANCE.evictionCount;
+    }
+
+    public static synchronized String getStats() {
+        var referenced = INSTANCE.assets.values().stream().filter((asset) -> asset.refCount > 0).count();
+        return "[assets: " + INSTANCE.assets.size() + "; referenced: " + referenced
+                + "; resident: " + INSTANCE.residentBytes + " / " + INSTANCE.budgetBytes + " bytes"
+                + "; hits: " + INSTANCE.hitCount + "; misses: " + INSTANCE.missCount
+                + "; evictions: " + INSTANCE.evictionCount + "]";
+    }
+
+    private short createTexture(String key, ByteBuffer textureData) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            var info = BGFXTextureInfo.malloc(stack);
+            var event = beginEvent();
+            var handle = ResourceLoader.createTexture(textureData, info);
+            return register(event, AssetType.TEXTURE, key, handle, info.storageSize(), null);
+        }
+    }
+
+    private static String textureKey(String fileName) {
+        return "texture:" + fileName;
+    }
+
+    private Asset lookup(String key) {
+        var asset = assets.get(key);
+        if (asset != null) {
+            asset.refCount++;
+            hitCount++;
+        }
+        return asset;
+    }
+
+    /**
+     * Lookup by content key, data is compared to rule out hash collisions and freed on hit
+     */
+    private Asset lookupData(String key, ByteBuffer data) {
+        var asset = assets.get(key);
+        if (asset == null || !asset.data.equals(data)) {
+            return null;
+        }
+
+        memFree(data);
+        asset.refCount++;
+        hitCount++;
+        return asset;
+    }
+
+    /**
+     * Content keys can collide, colliding buffer gets own key which is never looked up
+     */
+    private String uniqueKey(String key) {
+        return assets.containsKey(key) ? key + "#" + missCount : key;
+    }
+
+    private short register(GpuResourceEvent event, AssetType type, String key, short handle, long bytes,
+                           ByteBuffer data) {
+        commitEvent(event, "create", type, key, handle, bytes);
+        var asset = new Asset(type, key, handle, bytes, data);
+        asset.refCount = 1;
+        assets.put(key, asset);
+        assetsByHandle.put(handleKey(type, handle), asset);
+        residentBytes += bytes;
+        missCount++;
+
+        evict();
+        return handle;
+    }
+
+    private void evict() {
+        var iterator = assets.values().iterator();
+        while (residentBytes > budgetBytes && iterator.hasNext()) {
+            var asset = iterator.next();
+            if (asset.refCount > 0) continue;
+
+            iterator.remove();
+            assetsByHandle.remove(handleKey(asset.type, asset.handle));
+            residentBytes -= asset.bytes;
+            evictionCount++;
+            destroy(asset);
+        }
+    }
+
+    private static void destroy(Asset asset) {
+        var event = beginEvent();
+        switch (asset.type) {
+            case TEXTURE:
+                bgfx_destroy_texture(asset.handle);
+                break;
+            case PROGRAM:
+                bgfx_destroy_program(asset.handle);
+                break;
+            case VERTEX_BUFFER:
+                bgfx_destroy_vertex_buffer(asset.handle);
+                break;
+            case INDEX_BUFFER:
+                bgfx_destroy_index_buffer(asset.handle);
+                break;
+        }
+        if (asset.data != null) {
+            memFree(asset.data);
+        }
+        commitEvent(event, "destroy", asset.type, asset.key, asset.handle, asset.bytes);
+    }
+
+    /**
+     * JFR event spanning the bgfx call
+     */
+    private static GpuResourceEvent beginEvent() {
+        var event = new GpuResourceEvent();
+        event.begin();
+        return event;
+    }
+
+    private static void commitEvent(GpuResourceEvent event, String action, AssetType type, String key,
+                                    short handle, long bytes) {
+        if (!event.shouldCommit()) return;
+
+        event.setAction(action);
+        event.setType(type.name());
+        event.setName(key);
+        event.setHandle(handle & 0xffff);
+        event.setBytes(bytes);
+        event.commit();
+    }
+
+    private static int handleKey(AssetType type, short handle) {
+        return type.ordinal() << 16 | (handle & 0xffff);
+    }
+
+    /**
+     * 64 bit FNV-1a over 8 byte words
+     */
+    private static long contentHash(ByteBuffer data) {
+        long address = memAddress(data);
+        int size = data.remaining();
+        long hash = 0xcbf29ce484222325L;
+        int i = 0;
+        for (; i + Long.BYTES <= size; i += Long.BYTES) {
+            hash = (hash ^ memGetLong(address + i)) * 0x100000001b3L;
+        }
+        for (; i < size; i++) {
+            hash = (hash ^ memGetByte(address + i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,309 @@
+package org.opengame.engine.asset;
+
+import lombok.extern.java.Log;
+import org.opengame.engine.asset.AssetManager.AssetType;
+import org.opengame.engine.scene.Mesh;
+import org.opengame.engine.scene.MeshData;
+import org.opengame.engine.scene.MeshLoader;
+import org.opengame.engine.scene.Model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.lwjgl.system.MemoryUtil.memFree;
+
+/**
+ * Background loading of models and textures.
+ * File reads, model import and vertex conversion run on loader threads, bgfx resources are created
+ * on the main thread from upload queue which is drained every frame under a byte budget.
+ * Returned futures are completed on the main thread.
+ */
+@Log
+public enum AsyncLoader {
+    INSTANCE;
+
+    private final Queue<Upload> uploads = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingUploads = new AtomicInteger();
+    /**
+     * Futures not completed yet, failed on shutdown so callers don't wait forever
+     */
+    private final Set<CompletableFuture<?>> pendingFutures = ConcurrentHashMap.newKeySet();
+    private ExecutorService executor;
+    private long uploadedBytes;
+
+    private static final class Upload {
+        private final long bytes;
+        private final Runnable task;
+        /**
+         * Release CPU side data if upload never happens
+         */
+        private final Runnable cancel;
+
+        private Upload(long bytes, Runnable task, Runnable cancel) {
+            this.bytes = bytes;
+            this.task = task;
+            this.cancel = cancel;
+        }
+    }
+
+    /**
+     * Imported model waiting for upload
+     */
+    private static final class PendingModel {
+        private final String path;
+        private final List<MeshData> meshData;
+        private final Map<String, ByteBuffer> textureData;
+        private final List<Short> textures = new ArrayList<>();
+        private final List<Mesh> meshes = new ArrayList<>();
+        private final CompletableFuture<Model> future;
+        private boolean failed;
+
+        private PendingModel(String path, List<MeshData> meshData, Map<String, ByteBuffer> textureData,
+                             CompletableFuture<Model> future) {
+            this.path = path;
+            this.meshData = meshData;
+            this.textureData = textureData;
+            this.future = future;
+        }
+    }
+
+    public static synchronized void start(int threadCount) {
+        if (INSTANCE.executor != null) return;
+
+        var threadNumber = new AtomicInteger();
+        INSTANCE.executor = Executors.newFixedThreadPool(Math.max(threadCount, 1), (runnable) -> {
+            var thread = new Thread(runnable, "asset-loader-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Stop loader threads and drop uploads which are not processed yet.
+     * Futures which are not completed yet fail with CancellationException
+     */
+    public static synchronized void shutdown() {
+        if (INSTANCE.executor != null) {
+            INSTANCE.executor.shutdownNow();
+            INSTANCE.executor = null;
+        }
+
+        Upload upload;
+        while ((upload = INSTANCE.uploads.poll()) != null) {
+            upload.cancel.run();
+            INSTANCE.pendingUploads.decrementAndGet();
+        }
+
+        // loads which never reached the upload queue, e.g. tasks dropped by the executor
+        for (var future : List.copyOf(INSTANCE.pendingFutures)) {
+            future.completeExceptionally(new CancellationException("Async loader is shut down"));
+        }
+    }
+
+    private static <T> CompletableFuture<T> track(CompletableFuture<T> future) {
+        INSTANCE.pendingFutures.add(future);
+        future.whenComplete((result, error) -> INSTANCE.pendingFutures.remove(future));
+        return future;
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (INSTANCE.executor == null) {
+            throw new IllegalStateException("Async loader is not started");
+        }
+        return INSTANCE.executor;
+    }
+
+    /**
+     * Load model in background
+     * @param modelPath path to model file
+     * @return future completed on the main thread when all meshes are resident
+     */
+    public static CompletableFuture<Model> loadModelAsync(String modelPath) {
+        var future = track(new CompletableFuture<Model>());
+
+        getExecutor().execute(() -> {
+            try {
+                var meshData = MeshLoader.importModel(modelPath);
+                var textureData = new LinkedHashMap<String, ByteBuffer>();
+                try {
+                    for (var mesh : meshData) {
+                        var textureName = mesh.getTextureFileName();
+                        if (!textureData.containsKey(textureName) && !AssetManager.isTextureResident(textureName)) {
+                            textureData.put(textureName, ResourceLoader.loadTextureData(textureName));
+                        }
+                    }
+                } catch (IOException e) {
+                    meshData.forEach(MeshData::dispose);
+                    textureData.values().forEach((data) -> memFree(data));
+                    throw e;
+                }
+
+                enqueueModel(new PendingModel(modelPath, meshData, textureData, future));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Load texture in background
+     * @param fileName texture file name
+     * @return future with acquired texture handle, completed on the main thread. Caller releases the texture
+     */
+    public static CompletableFuture<Short> loadTextureAsync(String fileName) {
+        var future = track(new CompletableFuture<Short>());
+
+        getExecutor().execute(() -> {
+            try {
+                var data = ResourceLoader.loadTextureData(fileName);
+                INSTANCE.enqueue(new Upload(data.remaining(),
+                        () -> future.complete(AssetManager.acquireTexture(fileName, data)),
+                        () -> {
+                            memFree(data);
+                            future.cancel(false);
+                        }));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+
+        return future;
+    }
+
+    private static void enqueueModel(PendingModel model) {
+        // textures first, meshes created after them find textures resident
+        for (var texture : model.textureData.entrySet()) {
+            var textureName = texture.getKey();
+            var data = texture.getValue();
+            INSTANCE.enqueue(new Upload(data.remaining(),
+                    () -> uploadStep(model, () -> model.textures.add(AssetManager.acquireTexture(textureName, data)),
+                            () -> memFree(data)),
+                    () -> {
+                        memFree(data);
+                        cancelModel(model);
+                    }));
+        }
+
+        for (int i = 0; i < model.meshData.size(); i++) {
+            var meshData = model.meshData.get(i);
+            var isLast = i == model.meshData.size() - 1;
+            INSTANCE.enqueue(new Upload(meshData.getByteSize(),
+                    () -> uploadStep(model, () -> {
+                        model.meshes.add(meshData.createMesh());
+                        if (isLast) {
+                            completeModel(model);
+                        }
+                    }, meshData::dispose),
+                    () -> {
+                        meshData.dispose();
+                        cancelModel(model);
+                    }));
+        }
+
+        if (model.meshData.isEmpty()) {
+            INSTANCE.enqueue(new Upload(0, () -> completeModel(model), () -> cancelModel(model)));
+        }
+    }
+
+    private interface UploadAction {
+        void run() throws IOException;
+    }
+
+    /**
+     * Run upload step of the model, steps after a failed one only release their data
+     */
+    private static void uploadStep(PendingModel model, UploadAction action, Runnable skip) {
+        if (model.failed) {
+            skip.run();
+            return;
+        }
+
+        try {
+            action.run();
+        } catch (Throwable e) {
+            // data of the failed step is already owned by bgfx, asset manager or released by the mesh
+            releaseModel(model);
+            log.warning("Model " + model.path + " upload failed: " + e);
+            model.future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Release resources created by earlier upload steps, later steps only release their data
+     */
+    private static void releaseModel(PendingModel model) {
+        if (model.failed) return;
+
+        model.failed = true;
+        model.meshes.forEach(Mesh::dispose);
+        model.textures.forEach((texture) -> AssetManager.release(AssetType.TEXTURE, texture));
+    }
+
+    /**
+     * Upload of the model is dropped
+     */
+    private static void cancelModel(PendingModel model) {
+        releaseModel(model);
+        model.future.cancel(false);
+    }
+
+    private static void completeModel(PendingModel model) {
+        // meshes hold own texture references now
+        model.textures.forEach((texture) -> AssetManager.release(AssetType.TEXTURE, texture));
+        model.textures.clear();
+        model.future.complete(new Model(model.meshes));
+    }
+
+    /**
+     * Queue upload, after shutdown the upload is cancelled right away
+     */
+    private void enqueue(Upload upload) {
+        synchronized (AsyncLoader.class) {
+            if (executor == null) {
+                upload.cancel.run();
+                return;
+            }
+            pendingUploads.incrementAndGet();
+            uploads.add(upload);
+        }
+    }
+
+    /**
+     * Create queued bgfx resources, must be called on the main thread.
+     * At least one upload is processed every call so large assets can't stall the queue
+     * @param budgetBytes max bytes uploaded by this call, 0 - unlimited
+     */
+    public static void processUploads(long budgetBytes) {
+        long uploaded = 0;
+        Upload upload;
+        while ((budgetBytes <= 0 || uploaded < budgetBytes) && (upload = INSTANCE.uploads.poll()) != null) {
+            INSTANCE.pendingUploads.decrementAndGet();
+            upload.task.run();
+            uploaded += upload.bytes;
+        }
+        INSTANCE.uploadedBytes += uploaded;
+    }
+
+    public static int getPendingUploads() {
+        return INSTANCE.pendingUploads.get();
+    }
+
+    public static long getUploadedBytes() {
+        return INSTANCE.uploadedBytes;
+    }
+}
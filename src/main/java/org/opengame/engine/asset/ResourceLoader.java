@@ -0,0 +1,206 @@
+package org.opengame.engine.asset;
+
+import lombok.extern.java.Log;
+import org.lwjgl.bgfx.BGFXMemory;
+import org.lwjgl.bgfx.BGFXReleaseFunctionCallback;
+import org.lwjgl.bgfx.BGFXTextureInfo;
+import org.opengame.engine.Engine;
+import org.opengame.engine.profiler.GpuResourceEvent;
+import org.opengame.engine.profiler.ResourceLoadEvent;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.lwjgl.bgfx.BGFX.*;
+import static org.lwjgl.system.MemoryUtil.*;
+
+/**
+ * Load shaders, textures and raw resources from working directory into bgfx
+ */
+@Log
+public class ResourceLoader {
+    private static final AtomicLong loadedBytes = new AtomicLong();
+    private static final AtomicLong loadTimeNanos = new AtomicLong();
+    private static final AtomicLong loadCount = new AtomicLong();
+    private static final AtomicLong pendingReleaseBytes = new AtomicLong();
+
+    /**
+     * Called by bgfx from render thread, user data is the size of released memory
+     */
+    private static final BGFXReleaseFunctionCallback releaseMemoryCb =
+            BGFXReleaseFunctionCallback.create((_ptr, _userData) -> {
+                nmemFree(_ptr);
+                pendingReleaseBytes.addAndGet(-_userData);
+            });
+
+    public static short loadShader(String shaderName) throws IOException {
+        String resourcePath = Engine.getWorkingDirectory() + "shaders/";
+
+        switch (bgfx_get_renderer_type()) {
+            case BGFX_RENDERER_TYPE_DIRECT3D11:
+            case BGFX_RENDERER_TYPE_DIRECT3D12:
+                resourcePath += "dx11/";
+                break;
+            case BGFX_RENDERER_TYPE_DIRECT3D9:
+                resourcePath += "dx9/";
+                break;
+            case BGFX_RENDERER_TYPE_OPENGL:
+                resourcePath += "glsl/";
+                break;
+
+            case BGFX_RENDERER_TYPE_METAL:
+                resourcePath += "metal/";
+                break;
+            case BGFX_RENDERER_TYPE_VULKAN:
+            case BGFX_RENDERER_TYPE_NOOP:
+                // noop renderer only validates shader header, any compiled set works
+                resourcePath += "vulkan/";
+                break;
+
+            default:
+                throw new IOException("No shaders supported for " + bgfx_get_renderer_name(bgfx_get_renderer_type())
+                        + " renderer");
+        }
+
+        ByteBuffer shaderCode = loadResource(resourcePath + shaderName + ".bin", "shader");
+
+        var event = new GpuResourceEvent();
+        event.begin();
+        long bytes = shaderCode.remaining();
+        var handle = bgfx_create_shader(makeRef(shaderCode));
+        if (event.shouldCommit()) {
+            event.setAction("create");
+            event.setType("SHADER");
+            event.setHandle(handle & 0xffff);
+            event.setName(shaderName);
+            event.setBytes(bytes);
+            event.commit();
+        }
+        return handle;
+    }
+
+    /**
+     * Load texture from textures directory
+     * @param fileName texture file name
+     * @param info filled with texture description, can be null
+     * @return texture handle
+     */
+    public static short loadTexture(String fileName, BGFXTextureInfo info) throws IOException {
+        return createTexture(loadTextureData(fileName), info);
+    }
+
+    /**
+     * Read texture file without creating bgfx texture, can be called from any thread
+     * @param fileName texture file name
+     * @return file content
+     */
+    public static ByteBuffer loadTextureData(String fileName) throws IOException {
+        return loadResource(Engine.getWorkingDirectory() + "textures/" + fileName, "texture");
+    }
+
+    /**
+     * Create texture from file content, memory is released by bgfx
+     * @param textureData texture file content allocated with MemoryUtil
+     * @param info filled with texture description, can be null
+     * @return texture handle
+     */
+    public static short createTexture(ByteBuffer textureData, BGFXTextureInfo info) {
+        return bgfx_create_texture(makeRef(textureData), BGFX_TEXTURE_NONE, 0, info);
+    }
+
+    /**
+     * Read whole file with one bulk channel read into native memory, no intermediate heap copies
+     * @param resourcePath file path
+     * @return buffer allocated with MemoryUtil, caller owns it
+     */
+    public static ByteBuffer loadResource(String resourcePath) throws IOException {
+        return loadResource(resourcePath, "resource");
+    }
+
+    private static ByteBuffer loadResource(String resourcePath, String type) throws IOException {
+        var path = Path.of(resourcePath);
+        var event = new ResourceLoadEvent();
+        event.begin();
+
+        if (!Files.isRegularFile(path)) {
+            throw new IOException("Resource not found: " + resourcePath);
+        }
+
+        long startTime = System.nanoTime();
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long resourceSize = channel.size();
+            if (resourceSize > Integer.MAX_VALUE) {
+                throw new IOException("Resource is too large: " + resourcePath);
+            }
+
+            ByteBuffer resource = memAlloc((int) resourceSize);
+            try {
+                while (resource.hasRemaining()) {
+                    if (channel.read(resource) < 0) {
+                        throw new IOException("Unexpected end of resource: " + resourcePath);
+                    }
+                }
+            } catch (IOException e) {
+                memFree(resource);
+                throw e;
+            }
+            resource.flip();
+
+            long loadTime = System.nanoTime() - startTime;
+            loadedBytes.addAndGet(resourceSize);
+            loadTimeNanos.addAndGet(loadTime);
+            loadCount.incrementAndGet();
+
+            log.info("Loaded resource '" + path.normalize() + "' (" + resourceSize + " bytes, "
+                    + String.format("%.3f", loadTime / 1_000_000.0) + " ms)");
+
+            if (event.shouldCommit()) {
+                event.setType(type);
+                event.setPath(resourcePath);
+                event.setBytes(resourceSize);
+                event.commit();
+            }
+
+            return resource;
+        }
+    }
+
+    /**
+     * Pass memory allocated with MemoryUtil to bgfx, it's freed when bgfx doesn't need it anymore
+     */
+    private static BGFXMemory makeRef(ByteBuffer data) {
+        pendingReleaseBytes.addAndGet(data.remaining());
+        return Objects.requireNonNull(bgfx_make_ref_release(data, releaseMemoryCb, data.remaining()));
+    }
+
+    public static long getLoadedBytes() {
+        return loadedBytes.get();
+    }
+
+    /**
+     * @return bytes handed to bgfx and not released by it yet
+     */
+    public static long getPendingReleaseBytes() {
+        return pendingReleaseBytes.get();
+    }
+
+    /**
+     * @return average read throughput of all loaded resources in MB/s
+     */
+    public static double getLoadThroughput() {
+        long nanos = loadTimeNanos.get();
+        return nanos == 0 ? 0 : loadedBytes.get() / (1024.0 * 1024.0) / (nanos / 1_000_000_000.0);
+    }
+
+    public static String getStats() {
+        return "[resources: " + loadCount.get() + "; loaded: " + loadedBytes.get() + " bytes; "
+                + String.format("%.1f", getLoadThroughput()) + " MB/s; pending release: "
+                + pendingReleaseBytes.get() + " bytes]";
+    }
+}
@@ -1,8 +1,15 @@
 package org.opengame.engine.camera;
 
+import lombok.Getter;
+import org.joml.FrustumIntersection;
 import org.joml.Matrix4f;
 import org.joml.Matrix4x3f;
+import org.joml.Quaternionf;
+import org.joml.Quaternionfc;
 import org.joml.Vector3f;
+import org.joml.Vector3fc;
+import org.joml.Vector4f;
+import org.joml.Vector4fc;
 import org.lwjgl.system.MemoryUtil;
 import org.opengame.engine.Engine;
 import org.opengame.engine.object.SceneObject;
@@ -10,61 +17,238 @@ import org.opengame.engine.render.CameraUtils;
 
 import java.nio.FloatBuffer;
 
-import static org.lwjgl.bgfx.BGFX.bgfx_set_view_transform;
+import static org.lwjgl.bgfx.BGFX.*;
 
 /**
- * Base camera class
+ * Base camera class. Renders the scene into its own bgfx view, so several cameras can share the window
+ * (split screen, minimap). Position and quaternion orientation are changed by simulation ticks, view is
+ * interpolated between the last two ticks and uploaded to bgfx at most once per frame, only when it changed.
+ * Camera looks along +z of its orientation, y is up. Doesn't allocate after creation.
  */
 public class Camera extends SceneObject {
+    private static final float DEFAULT_FOV = 35.0f;
+    private static final float DEFAULT_NEAR = 0.1f;
+    private static final float DEFAULT_FAR = 100.0f;
+    private static final int DEFAULT_CLEAR_COLOR = 0x303030ff;
+
+    /**
+     * bgfx view the camera renders into
+     */
+    @Getter
+    private final int viewId;
+
+    protected final Vector3f position = new Vector3f(0, 0, -1);
+    protected final Quaternionf orientation = new Quaternionf();
+    private final Vector3f previousPosition = new Vector3f();
+    private final Quaternionf previousOrientation = new Quaternionf();
+
+    /**
+     * Interpolated state uploaded in the last frame
+     */
+    private final Vector3f renderPosition = new Vector3f();
+    private final Quaternionf renderOrientation = new Quaternionf();
+    private final Vector3f interpolatedPosition = new Vector3f();
+    private final Quaternionf interpolatedOrientation = new Quaternionf();
+    private final Quaternionf inverseOrientation = new Quaternionf();
+    private final Vector3f offset = new Vector3f();
+
+    /**
+     * x, y, width, height as fractions of the window
+     */
+    private final Vector4f viewport = new Vector4f(0, 0, 1, 1);
+    private float fov = DEFAULT_FOV;
+    private float near = DEFAULT_NEAR;
+    private float far = DEFAULT_FAR;
 
     private final Matrix4x3f view = new Matrix4x3f();
     private final FloatBuffer viewBuffer;
     private final Matrix4f projection = new Matrix4f();
     private final FloatBuffer projectionBuffer;
-    protected Vector3f position;
-    protected Vector3f rotation;
-    protected Vector3f direction;
-    protected Vector3f right;
-    protected Vector3f left;
-    protected Vector3f up;
+    private final Matrix4f viewProjection = new Matrix4f();
+    /**
+     * Planes of the current view projection, used for culling
+     */
+    @Getter
+    private final FrustumIntersection frustum = new FrustumIntersection();
+    /**
+     * Point the view is looking from, updated with the view projection
+     */
+    @Getter
+    private final Vector3f eye = new Vector3f();
 
+    /**
+     * Viewport or projection changed, view is always uploaded on the next frame
+     */
+    private boolean dirty = true;
+    /**
+     * View uploads to bgfx since creation
+     */
+    @Getter
+    private long uploadCount;
 
     public Camera() {
+        this(0);
+    }
+
+    /**
+     * @param viewId bgfx view to render into, views are drawn in ascending order
+     */
+    public Camera(int viewId) {
+        this.viewId = viewId;
         viewBuffer = MemoryUtil.memAllocFloat(16);
         projectionBuffer = MemoryUtil.memAllocFloat(16);
-        position = new Vector3f();
-        rotation = new Vector3f();
-        direction = new Vector3f(0, 0, -1);
-        right = new Vector3f(1, 0, 0);
-        left = new Vector3f(1, 0, 0);
-        up = new Vector3f(0, 1, 0);
 
-        CameraUtils.perspective(35, Engine.getScreenWidth(), Engine.getScreenHeight(),
-                0.1f, 100.0f, projection);
+        bgfx_set_view_clear(viewId, BGFX_CLEAR_COLOR | BGFX_CLEAR_DEPTH, DEFAULT_CLEAR_COLOR, 1.0f, 0);
+        // draws are submitted with their render queue rank as depth
+        bgfx_set_view_mode(viewId, BGFX_VIEW_MODE_DEPTH_ASCENDING);
+
+        snap();
+        prepareFrame(1.0f);
+    }
+
+    public Vector3fc getPosition() {
+        return position;
+    }
+
+    public Quaternionfc getOrientation() {
+        return orientation;
+    }
+
+    public void setPosition(Vector3fc position) {
+        this.position.set(position);
+    }
+
+    public void setOrientation(Quaternionfc orientation) {
+        this.orientation.set(orientation);
     }
 
-    public void setViewProjection() {
-        view.identity();
-        var eye = new Vector3f(position);
-        eye.add(direction);
-        CameraUtils.lookAt(position, eye, view);
+    /**
+     * @param dest receives unit vector the camera looks along
+     * @return dest
+     */
+    public Vector3f getForward(Vector3f dest) {
+        return orientation.transform(0, 0, 1, dest);
+    }
+
+    public Vector3f getRight(Vector3f dest) {
+        return orientation.transform(1, 0, 0, dest);
+    }
+
+    public Vector3f getUp(Vector3f dest) {
+        return orientation.transform(0, 1, 0, dest);
+    }
 
-        bgfx_set_view_transform(0, view.get4x4(viewBuffer), projection.get(projectionBuffer));
+    public Vector4fc getViewport() {
+        return viewport;
+    }
+
+    /**
+     * @param x left edge as fraction of the window width
+     * @param y top edge as fraction of the window height
+     * @param width fraction of the window width
+     * @param height fraction of the window height
+     */
+    public void setViewport(float x, float y, float width, float height) {
+        viewport.set(x, y, width, height);
+        dirty = true;
+    }
+
+    /**
+     * @param fov vertical field of view in degrees
+     */
+    public void setPerspective(float fov, float near, float far) {
+        this.fov = fov;
+        this.near = near;
+        this.far = far;
+        dirty = true;
+    }
+
+    /**
+     * @return cotangent of the half vertical field of view, scales size / distance to the fraction
+     *         of half of the view height
+     */
+    public float getProjectionScale() {
+        return 1.0f / (float) Math.tan(Math.toRadians(fov) * 0.5);
+    }
+
+    public void setClearColor(int rgba) {
+        bgfx_set_view_clear(viewId, BGFX_CLEAR_COLOR | BGFX_CLEAR_DEPTH, rgba, 1.0f, 0);
     }
 
     public void moveForward(float offset) {
-        position.add(direction.x * offset, direction.y * offset, direction.z * offset);
-        setViewProjection();
+        move(0, 0, offset);
     }
 
     public void moveRight(float offset) {
-        position.add(right.x * offset, right.y * offset, right.z * offset);
-        setViewProjection();
+        move(offset, 0, 0);
     }
 
     public void moveUp(float offset) {
-        position.add(up.x * offset, up.y * offset, up.z * offset);
-        setViewProjection();
+        move(0, offset, 0);
+    }
+
+    /**
+     * Move along camera axes
+     */
+    public void move(float right, float up, float forward) {
+        position.add(orientation.transform(offset.set(right, up, forward)));
+    }
+
+    /**
+     * Start of a simulation tick, subclasses moving the camera call it before the change
+     */
+    @Override
+    public void update() {
+        previousPosition.set(position);
+        previousOrientation.set(orientation);
+    }
+
+    /**
+     * Skip interpolation from the previous tick, e.g. after teleporting
+     */
+    public void snap() {
+        previousPosition.set(position);
+        previousOrientation.set(orientation);
+    }
+
+    /**
+     * Interpolate between the last two ticks and upload view and projection if they changed.
+     * Called once per frame on the main thread before culling
+     * @param interpolationAlpha position between the previous and the last tick
+     */
+    public void prepareFrame(float interpolationAlpha) {
+        previousPosition.lerp(position, interpolationAlpha, interpolatedPosition);
+        // slerp of equal rotations isn't exact, static camera would be uploaded every frame
+        if (previousOrientation.equals(orientation)) {
+            interpolatedOrientation.set(orientation);
+        } else {
+            previousOrientation.slerp(orientation, interpolationAlpha, interpolatedOrientation);
+        }
+        if (!dirty && interpolatedPosition.equals(renderPosition)
+                && interpolatedOrientation.equals(renderOrientation)) {
+            return;
+        }
+
+        int width = Engine.getScreenWidth();
+        int height = Engine.getScreenHeight();
+        int viewWidth = Math.max(1, Math.round(viewport.z * width));
+        int viewHeight = Math.max(1, Math.round(viewport.w * height));
+        if (dirty) {
+            CameraUtils.perspective(fov, viewWidth, viewHeight, near, far, projection);
+            bgfx_set_view_rect(viewId, Math.round(viewport.x * width), Math.round(viewport.y * height),
+                    viewWidth, viewHeight);
+            dirty = false;
+        }
+
+        renderPosition.set(interpolatedPosition);
+        renderOrientation.set(interpolatedOrientation);
+        eye.set(renderPosition);
+        view.rotation(renderOrientation.conjugate(inverseOrientation))
+                .translate(-renderPosition.x, -renderPosition.y, -renderPosition.z);
+
+        bgfx_set_view_transform(viewId, view.get4x4(viewBuffer), projection.get(projectionBuffer));
+        frustum.set(projection.mul(view, viewProjection));
+        uploadCount++;
     }
 
     public void dispose() {
@@ -3,157 +3,79 @@ package org.opengame.engine.camera;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.java.Log;
-import org.joml.*;
-import org.opengame.engine.Engine;
-import org.opengame.engine.event.EventBus;
-import org.opengame.engine.event.EventType;
-import org.opengame.engine.event.KeyEventData;
-import org.opengame.engine.event.MouseEventData;
-
-import java.lang.Math;
+import org.opengame.engine.input.InputState;
 
 import static org.lwjgl.glfw.GLFW.*;
 
+/**
+ * Camera controlled with mouse and keyboard, orientation is built from yaw and clamped pitch
+ */
 @Log
 public class FlyingCamera extends Camera {
 
     private static final float DEFAULT_FLY_SPEED = 0.05f;
+    private static final float MAX_PITCH = (float) Math.toRadians(85.0);
 
-    private final Vector2f windowCenterPos;
-
-    private Vector2f viewportSize;
     @Setter
     @Getter
     private float flySpeed;
-    private boolean isChangingDirection;
-    private double lastMouseX = -1;
-    private double lastMouseY = -1;
-    private float currentStrafeSpeed = 0;
-    private float currentForwardSpeed = 0;
-    private float currentUpSpeed = 0;
-
-    private float startTime;
-    private float mouseSensitivity = 0.15f;
-
-    private FlyingCamera() {
-        super();
-
-        viewportSize = new Vector2f(Engine.getScreenWidth(), Engine.getScreenHeight());
-        windowCenterPos = viewportSize.div(2);
-
-        //position = new Vector3f(0, 5, -10);
-        //setViewProjection();
+    /**
+     * Radians per pixel of cursor motion
+     */
+    @Setter
+    @Getter
+    private float mouseSensitivity = (float) Math.toRadians(0.15);
+    private float yaw;
+    private float pitch;
 
-        EventBus.subscribeToEvent(EventType.KEY_PRESSED, (eventData) -> processKeyPressedEvent((KeyEventData) eventData));
-        EventBus.subscribeToEvent(EventType.MOUSE_BUTTON_EVENT, (eventData) -> processMousePressedEvent((KeyEventData) eventData));
-        EventBus.subscribeToEvent(EventType.MOUSE_MOVED, (eventData) -> processMouseMovedEvent((MouseEventData) eventData));
+    private FlyingCamera(int viewId) {
+        super(viewId);
     }
 
     public static FlyingCamera createDefault() {
-        var defaultCam = new FlyingCamera();
-        defaultCam.flySpeed = DEFAULT_FLY_SPEED;
-
-        return defaultCam;
+        return create(0);
     }
-    private void processMouseMovedEvent(MouseEventData eventData) {
-        if (!isChangingDirection) return;
 
-        if (lastMouseX == -1 || lastMouseY == -1) {
-            lastMouseX = eventData.getXPos();
-            lastMouseY = eventData.getYPos();
-        }
-        var deltaX = lastMouseX - eventData.getXPos();
-        var deltaY = lastMouseY - eventData.getYPos();
+    /**
+     * @param viewId bgfx view to render into
+     */
+    public static FlyingCamera create(int viewId) {
+        var camera = new FlyingCamera(viewId);
+        camera.flySpeed = DEFAULT_FLY_SPEED;
 
-        if (deltaX != 0) {
-            rotateLeftRight((float) deltaX * mouseSensitivity);
-        }
-        if (deltaY != 0) {
-            rotateUpDown((float) deltaY * mouseSensitivity);
-        }
-        setViewProjection();
-
-        lastMouseX = eventData.getXPos();
-        lastMouseY = eventData.getYPos();
-
-        //Engine.setCursorPos(windowCenterPos);
+        return camera;
     }
 
-    private void rotateUpDown(float delta) {
-        var normalizedDirection = direction.normalize();
-        var directionNoY = new Vector3f(normalizedDirection.x, 0, normalizedDirection.z).normalize();
-
-        var currentAngleDegrees = Math.toDegrees(Math.acos(directionNoY.dot(direction)));
-        if (normalizedDirection.y < 0.0f) {
-            currentAngleDegrees = -currentAngleDegrees;
+    /**
+     * Poll input once per tick: rotate by cursor motion while right button is held, fly with WASD, arrows
+     * and space
+     */
+    @Override
+    public void update() {
+        super.update();
+
+        if (InputState.isButtonDown(GLFW_MOUSE_BUTTON_RIGHT)) {
+            var deltaX = InputState.getCursorDeltaX();
+            var deltaY = InputState.getCursorDeltaY();
+            if (deltaX != 0 || deltaY != 0) {
+                yaw += (float) deltaX * mouseSensitivity;
+                pitch = Math.max(-MAX_PITCH, Math.min(MAX_PITCH, pitch + (float) deltaY * mouseSensitivity));
+                orientation.rotationYXZ(yaw, pitch, 0);
+            }
         }
 
-        var newAngleDegrees = currentAngleDegrees + delta;
-
-        if (newAngleDegrees < -85.0f || newAngleDegrees > 85.0f) return;
-
-        var rotationAxis = new Vector3f(normalizedDirection).cross(up).normalize();
-        var rotationMatrix = new Matrix4f().rotate((float) Math.toRadians(delta), rotationAxis);
-
-        var rotatedDirection = new Vector4f(normalizedDirection, 0).mul(rotationMatrix).normalize();
-        direction = new Vector3f(rotatedDirection.x, rotatedDirection.y, rotatedDirection.z);
-    }
-
-    private void rotateLeftRight(float delta) {
-        var normalizedDirection = direction.normalize();
-        var rotationMatrix = new Matrix4f().rotate((float) Math.toRadians(delta), up);
-        var rotatedDirection = new Vector4f(normalizedDirection, 0).mul(rotationMatrix);
-        direction = new Vector3f(rotatedDirection.x, rotatedDirection.y, rotatedDirection.z);
-
-        var rotatedRight = new Vector4f(right.normalize(), 0).mul(rotationMatrix);
-        right = new Vector3f(rotatedRight.x, rotatedRight.y, rotatedRight.z);
-    }
-
-    private void processKeyPressedEvent(KeyEventData eventData) {
-        var key = eventData.getKeyCode();
-
-        var isPressedMultiplier = eventData.isPressed() ? 1.0 : -1.0;
-
-        if (key == GLFW_KEY_RIGHT || key == GLFW_KEY_D) {
-            currentStrafeSpeed += flySpeed * isPressedMultiplier;
-        }
-        if (key == GLFW_KEY_LEFT || key == GLFW_KEY_A) {
-            currentStrafeSpeed -= flySpeed * isPressedMultiplier;
-        }
-        if (key == GLFW_KEY_UP || key == GLFW_KEY_W) {
-            currentForwardSpeed -= flySpeed * isPressedMultiplier;
-        }
-        if (key == GLFW_KEY_DOWN || key == GLFW_KEY_S) {
-            currentForwardSpeed += flySpeed * isPressedMultiplier;
-        }
-        if (key == GLFW_KEY_SPACE) {
-            currentUpSpeed += flySpeed * isPressedMultiplier;
+        float strafe = axis(GLFW_KEY_RIGHT, GLFW_KEY_D) - axis(GLFW_KEY_LEFT, GLFW_KEY_A);
+        float forward = axis(GLFW_KEY_UP, GLFW_KEY_W) - axis(GLFW_KEY_DOWN, GLFW_KEY_S);
+        if (strafe != 0 || forward != 0) {
+            move(strafe * flySpeed, 0, forward * flySpeed);
         }
-
-        if (key == GLFW_MOUSE_BUTTON_RIGHT) {
-            isChangingDirection = eventData.isPressed();
+        if (InputState.isKeyDown(GLFW_KEY_SPACE)) {
+            // world up, not camera up
+            position.y += flySpeed;
         }
     }
 
-    private void processMousePressedEvent(KeyEventData eventData) {
-        if (eventData.getKeyCode() != GLFW_MOUSE_BUTTON_RIGHT) return;
-
-        lastMouseX = -1;
-        lastMouseY = -1;
-
-        isChangingDirection = eventData.isPressed();
-    }
-
-    @Override
-    public void update() {
-        if (currentStrafeSpeed != 0) {
-            moveRight(currentStrafeSpeed);
-        }
-        if (currentForwardSpeed != 0) {
-            moveForward(currentForwardSpeed);
-        }
-        if (currentUpSpeed != 0) {
-            moveUp(currentUpSpeed);
-        }
+    private static float axis(int key, int alternativeKey) {
+        return InputState.isKeyDown(key) || InputState.isKeyDown(alternativeKey) ? 1 : 0;
     }
 }
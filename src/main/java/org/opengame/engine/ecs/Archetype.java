@@ -0,0 +1,148 @@
+package org.opengame.engine.ecs;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * Entities with exactly the same set of components. Every float component is one primitive array
+ * with width floats per entity, rows are packed without gaps, so systems iterate plain arrays.
+ * Arrays are replaced when the archetype grows, systems must not keep them between iterations.
+ */
+public final class Archetype {
+    private static final int INITIAL_CAPACITY = 16;
+
+    @Getter
+    private final long mask;
+    private final ComponentType[] types;
+    /**
+     * Indexed by component type id
+     */
+    private final float[][] floatColumns = new float[ComponentType.MAX_TYPES][];
+    private final Object[][] objectColumns = new Object[ComponentType.MAX_TYPES][];
+    private int[] entities = new int[INITIAL_CAPACITY];
+    @Getter
+    private int size;
+
+    Archetype(long mask, ComponentType[] types) {
+        this.mask = mask;
+        this.types = types;
+        for (var type : types) {
+            if (type.isObject()) {
+                objectColumns[type.getId()] = new Object[INITIAL_CAPACITY];
+            } else {
+                floatColumns[type.getId()] = new float[INITIAL_CAPACITY * type.getWidth()];
+            }
+        }
+    }
+
+    public boolean has(ComponentType type) {
+        return (mask & type.getMask()) != 0;
+    }
+
+    public boolean matches(long requiredMask) {
+        return (mask & requiredMask) == requiredMask;
+    }
+
+    /**
+     * @param type float component type of the archetype
+     * @return packed values, width floats per row
+     */
+    public float[] floats(ComponentType type) {
+        var column = floatColumns[type.getId()];
+        if (column == null) {
+            throw new IllegalArgumentException("Archetype has no float component " + type);
+        }
+        return column;
+    }
+
+    /**
+     * @param type object component type of the archetype
+     * @return references, one per row
+     */
+    public Object[] objects(ComponentType type) {
+        var column = objectColumns[type.getId()];
+        if (column == null) {
+            throw new IllegalArgumentException("Archetype has no object component " + type);
+        }
+        return column;
+    }
+
+    /**
+     * @param row row
+     * @return entity id of the row
+     */
+    public int entity(int row) {
+        return entities[row];
+    }
+
+    int addRow(int entity) {
+        if (size == entities.length) {
+            grow();
+        }
+        entities[size] = entity;
+        // float columns keep values of removed rows
+        for (var type : types) {
+            if (!type.isObject()) {
+                int width = type.getWidth();
+                Arrays.fill(floatColumns[type.getId()], size * width, size * width + width, 0);
+            }
+        }
+        return size++;
+    }
+
+    /**
+     * Remove row moving the last row into its place
+     * @return entity moved into the row, -1 if the removed row was the last one
+     */
+    int removeRow(int row) {
+        int last = --size;
+        int moved = -1;
+        for (var type : types) {
+            if (type.isObject()) {
+                var column = objectColumns[type.getId()];
+                column[row] = column[last];
+                column[last] = null;
+            } else if (row != last) {
+                int width = type.getWidth();
+                var column = floatColumns[type.getId()];
+                System.arraycopy(column, last * width, column, row * width, width);
+            }
+        }
+        if (row != last) {
+            moved = entities[last];
+            entities[row] = moved;
+        }
+        return moved;
+    }
+
+    /**
+     * Copy components present in both archetypes
+     */
+    void copyRow(int row, Archetype destination, int destinationRow) {
+        for (var type : types) {
+            if (!destination.has(type)) continue;
+
+            if (type.isObject()) {
+                destination.objectColumns[type.getId()][destinationRow] = objectColumns[type.getId()][row];
+            } else {
+                int width = type.getWidth();
+                System.arraycopy(floatColumns[type.getId()], row * width,
+                        destination.floatColumns[type.getId()], destinationRow * width, width);
+            }
+        }
+    }
+
+    private void grow() {
+        int capacity = entities.length * 2;
+        entities = Arrays.copyOf(entities, capacity);
+        for (var type : types) {
+            int id = type.getId();
+            if (type.isObject()) {
+                objectColumns[id] = Arrays.copyOf(objectColumns[id], capacity);
+            } else {
+                floatColumns[id] = Arrays.copyOf(floatColumns[id], capacity * type.getWidth());
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.opengame.engine.ecs;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Kind of component. Float components are stored as fixed number of floats per entity
+ * in one primitive array per archetype, object components hold references (e.g. adapted scene objects).
+ * Up to 64 types can be created, type id is its bit in the archetype mask.
+ */
+@Getter
+public final class ComponentType {
+    public static final int MAX_TYPES = Long.SIZE;
+
+    private static final AtomicInteger nextId = new AtomicInteger();
+    private static final ComponentType[] typesById = new ComponentType[MAX_TYPES];
+
+    private final int id;
+    private final String name;
+    /**
+     * Floats per entity, 0 for object components
+     */
+    private final int width;
+    private final Class<?> objectClass;
+
+    private ComponentType(String name, int width, Class<?> objectClass) {
+        this.id = nextId.getAndIncrement();
+        if (id >= MAX_TYPES) {
+            throw new IllegalStateException("Too many component types, max is " + MAX_TYPES);
+        }
+        this.name = name;
+        this.width = width;
+        this.objectClass = objectClass;
+        typesById[id] = this;
+    }
+
+    static ComponentType byId(int id) {
+        return typesById[id];
+    }
+
+    public static ComponentType floats(String name, int width) {
+        if (width <= 0) {
+            throw new IllegalArgumentException("Component width must be positive");
+        }
+        return new ComponentType(name, width, null);
+    }
+
+    public static ComponentType objects(String name, Class<?> objectClass) {
+        return new ComponentType(name, 0, objectClass);
+    }
+
+    public boolean isObject() {
+        return objectClass != null;
+    }
+
+    public long getMask() {
+        return 1L << id;
+    }
+
+    /**
+     * @param types component types
+     * @return mask with bits of all types
+     */
+    public static long maskOf(ComponentType... types) {
+        long mask = 0;
+        for (var type : types) {
+            mask |= type.getMask();
+        }
+        return mask;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
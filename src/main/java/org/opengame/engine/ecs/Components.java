@@ -0,0 +1,33 @@
+package org.opengame.engine.ecs;
+
+import org.opengame.engine.object.SceneObject;
+import org.opengame.engine.scene.Mesh;
+
+/**
+ * Component types used by engine systems
+ */
+public final class Components {
+    /**
+     * x, y, z
+     */
+    public static final ComponentType POSITION = ComponentType.floats("position", 3);
+    /**
+     * Angles around x, y and z axes in radians
+     */
+    public static final ComponentType ROTATION = ComponentType.floats("rotation", 3);
+    /**
+     * Units per second along x, y and z
+     */
+    public static final ComponentType VELOCITY = ComponentType.floats("velocity", 3);
+    /**
+     * Mesh which transform follows position and rotation of the entity
+     */
+    public static final ComponentType MESH = ComponentType.objects("mesh", Mesh.class);
+    /**
+     * Scene object updated by the entity world, e.g. camera
+     */
+    public static final ComponentType SCENE_OBJECT = ComponentType.objects("sceneObject", SceneObject.class);
+
+    private Components() {
+    }
+}
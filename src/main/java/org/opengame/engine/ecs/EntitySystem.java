@@ -0,0 +1,12 @@
+package org.opengame.engine.ecs;
+
+/**
+ * Logic running over entities of the world every update
+ */
+public interface EntitySystem {
+    /**
+     * @param world entity world
+     * @param deltaTime time since last update in seconds
+     */
+    void update(EntityWorld world, float deltaTime);
+}
@@ -0,0 +1,269 @@
+package org.opengame.engine.ecs;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Archetype based entity and component store. Entity is an int id, its components live in the rows
+ * of the archetype matching its component set. Adding or removing a component moves the entity
+ * to another archetype. Systems iterate matching archetypes as plain arrays.
+ * Entity id holds slot index in low 24 bits and slot generation in high 8 bits,
+ * so ids of destroyed entities are detected until the slot is reused 256 times.
+ * Structural changes (create, destroy, add, remove) must not happen while iterating.
+ */
+public class EntityWorld {
+    private static final int INDEX_BITS = 24;
+    private static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+    private static final int MAX_ENTITIES = 1 << INDEX_BITS;
+    /**
+     * Rows per task of parallel iteration
+     */
+    private static final int PARALLEL_BATCH_SIZE = 4096;
+
+    private final Map<Long, Archetype> archetypes = new HashMap<>();
+    private final List<Archetype> archetypeList = new ArrayList<>();
+    private final List<EntitySystem> systems = new ArrayList<>();
+
+    private Archetype[] entityArchetypes = new Archetype[64];
+    private int[] entityRows = new int[64];
+    private int[] generations = new int[64];
+    private int[] freeSlots = new int[64];
+    private int freeSlotCount;
+    private int slotCount;
+    @Getter
+    private int entityCount;
+
+    /**
+     * Action over a range of archetype rows
+     */
+    public interface ChunkAction {
+        /**
+         * @param archetype archetype with all queried components
+         * @param from first row, inclusive
+         * @param to last row, exclusive
+         */
+        void run(Archetype archetype, int from, int to);
+    }
+
+    /**
+     * Create entity
+     * @param types initial components, float components are zeroed
+     * @return entity id
+     */
+    public int create(ComponentType... types) {
+        int slot;
+        if (freeSlotCount > 0) {
+            slot = freeSlots[--freeSlotCount];
+        } else {
+            if (slotCount == MAX_ENTITIES) {
+                throw new IllegalStateException("Too many entities");
+            }
+            if (slotCount == entityArchetypes.length) {
+                growSlots();
+            }
+            slot = slotCount++;
+        }
+
+        int entity = generations[slot] << INDEX_BITS | slot;
+        var archetype = getArchetype(ComponentType.maskOf(types));
+        entityArchetypes[slot] = archetype;
+        entityRows[slot] = archetype.addRow(entity);
+        entityCount++;
+        return entity;
+    }
+
+    public void destroy(int entity) {
+        int slot = checkEntity(entity);
+        removeFromArchetype(slot);
+
+        entityArchetypes[slot] = null;
+        generations[slot] = (generations[slot] + 1) & 0xff;
+        freeSlots[freeSlotCount++] = slot;
+        entityCount--;
+    }
+
+    public boolean isAlive(int entity) {
+        int slot = entity & INDEX_MASK;
+        return slot < slotCount && entityArchetypes[slot] != null
+                && generations[slot] == entity >>> INDEX_BITS;
+    }
+
+    public boolean has(int entity, ComponentType type) {
+        return entityArchetypes[checkEntity(entity)].has(type);
+    }
+
+    /**
+     * Add component, values of other components are kept. Does nothing if component is present
+     */
+    public void add(int entity, ComponentType type) {
+        int slot = checkEntity(entity);
+        var archetype = entityArchetypes[slot];
+        if (archetype.has(type)) return;
+
+        moveEntity(slot, getArchetype(archetype.getMask() | type.getMask()));
+    }
+
+    /**
+     * Remove component, values of other components are kept. Does nothing if component is missing
+     */
+    public void remove(int entity, ComponentType type) {
+        int slot = checkEntity(entity);
+        var archetype = entityArchetypes[slot];
+        if (!archetype.has(type)) return;
+
+        moveEntity(slot, getArchetype(archetype.getMask() & ~type.getMask()));
+    }
+
+    public float getFloat(int entity, ComponentType type, int index) {
+        int slot = checkEntity(entity);
+        return entityArchetypes[slot].floats(type)[entityRows[slot] * type.getWidth() + index];
+    }
+
+    /**
+     * Set values of float component
+     * @param entity entity
+     * @param type float component present on the entity
+     * @param values component values, up to component width
+     */
+    public void setFloats(int entity, ComponentType type, float... values) {
+        if (values.length > type.getWidth()) {
+            throw new IllegalArgumentException("Component " + type + " has " + type.getWidth() + " values");
+        }
+        int slot = checkEntity(entity);
+        System.arraycopy(values, 0, entityArchetypes[slot].floats(type), entityRows[slot] * type.getWidth(),
+                values.length);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T getObject(int entity, ComponentType type) {
+        int slot = checkEntity(entity);
+        return (T) entityArchetypes[slot].objects(type)[entityRows[slot]];
+    }
+
+    public void setObject(int entity, ComponentType type, Object value) {
+        if (value != null && !type.getObjectClass().isInstance(value)) {
+            throw new IllegalArgumentException("Component " + type + " holds " + type.getObjectClass().getName());
+        }
+        int slot = checkEntity(entity);
+        entityArchetypes[slot].objects(type)[entityRows[slot]] = value;
+    }
+
+    /**
+     * Run action over all rows of archetypes having all given components, on the calling thread
+     * @param action action
+     * @param types required components
+     */
+    public void forEach(ChunkAction action, ComponentType... types) {
+        long mask = ComponentType.maskOf(types);
+        for (var archetype : archetypeList) {
+            if (archetype.getSize() > 0 && archetype.matches(mask)) {
+                action.run(archetype, 0, archetype.getSize());
+            }
+        }
+    }
+
+    /**
+     * Run action over all rows of archetypes having all given components, split into batches
+     * executed in parallel on the common fork join pool. Action must only write rows of its range
+     * @param action action
+     * @param types required components
+     */
+    public void forEachParallel(ChunkAction action, ComponentType... types) {
+        long mask = ComponentType.maskOf(types);
+        for (var archetype : archetypeList) {
+            int size = archetype.getSize();
+            if (size == 0 || !archetype.matches(mask)) continue;
+
+            if (size <= PARALLEL_BATCH_SIZE) {
+                action.run(archetype, 0, size);
+                continue;
+            }
+
+            int batchCount = (size + PARALLEL_BATCH_SIZE - 1) / PARALLEL_BATCH_SIZE;
+            IntStream.range(0, batchCount).parallel().forEach((batch) -> action.run(archetype,
+                    batch * PARALLEL_BATCH_SIZE, Math.min(size, (batch + 1) * PARALLEL_BATCH_SIZE)));
+        }
+    }
+
+    public void addSystem(EntitySystem system) {
+        systems.add(system);
+    }
+
+    public void removeSystem(EntitySystem system) {
+        systems.remove(system);
+    }
+
+    /**
+     * Run systems in order of adding
+     * @param deltaTime time since last update in seconds
+     */
+    public void update(float deltaTime) {
+        for (var system : systems) {
+            system.update(this, deltaTime);
+        }
+    }
+
+    public int getArchetypeCount() {
+        return archetypeList.size();
+    }
+
+    private Archetype getArchetype(long mask) {
+        var archetype = archetypes.get(mask);
+        if (archetype == null) {
+            archetype = new Archetype(mask, typesOf(mask));
+            archetypes.put(mask, archetype);
+            archetypeList.add(archetype);
+        }
+        return archetype;
+    }
+
+    private static ComponentType[] typesOf(long mask) {
+        var types = new ComponentType[Long.bitCount(mask)];
+        int i = 0;
+        for (long bits = mask; bits != 0; bits &= bits - 1) {
+            types[i++] = ComponentType.byId(Long.numberOfTrailingZeros(bits));
+        }
+        return types;
+    }
+
+    private int checkEntity(int entity) {
+        if (!isAlive(entity)) {
+            throw new IllegalArgumentException("Entity " + entity + " doesn't exist");
+        }
+        return entity & INDEX_MASK;
+    }
+
+    private void moveEntity(int slot, Archetype destination) {
+        var source = entityArchetypes[slot];
+        int row = entityRows[slot];
+        int entity = source.entity(row);
+
+        int destinationRow = destination.addRow(entity);
+        source.copyRow(row, destination, destinationRow);
+        removeFromArchetype(slot);
+
+        entityArchetypes[slot] = destination;
+        entityRows[slot] = destinationRow;
+    }
+
+    private void removeFromArchetype(int slot) {
+        int moved = entityArchetypes[slot].removeRow(entityRows[slot]);
+        if (moved != -1) {
+            entityRows[moved & INDEX_MASK] = entityRows[slot];
+        }
+    }
+
+    private void growSlots() {
+        int capacity = entityArchetypes.length * 2;
+        entityArchetypes = Arrays.copyOf(entityArchetypes, capacity);
+        entityRows = Arrays.copyOf(entityRows, capacity);
+        generations = Arrays.copyOf(generations, capacity);
+        freeSlots = Arrays.copyOf(freeSlots, capacity);
+    }
+}
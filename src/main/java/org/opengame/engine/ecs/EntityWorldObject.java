@@ -0,0 +1,23 @@
+package org.opengame.engine.ecs;
+
+import lombok.Getter;
+import org.opengame.engine.Engine;
+import org.opengame.engine.object.SceneObject;
+
+/**
+ * Scene object running systems of an entity world on every simulation tick,
+ * lets the world live in a regular scene
+ */
+public class EntityWorldObject extends SceneObject {
+    @Getter
+    private final EntityWorld world;
+
+    public EntityWorldObject(EntityWorld world) {
+        this.world = world;
+    }
+
+    @Override
+    public void update() {
+        world.update(Engine.getTickDuration());
+    }
+}
@@ -0,0 +1,53 @@
+package org.opengame.engine.ecs;
+
+import org.joml.Vector3f;
+import org.opengame.engine.scene.Mesh;
+
+import static org.opengame.engine.ecs.Components.*;
+
+/**
+ * Adapter for existing meshes: copies position and rotation of entities into their mesh transforms.
+ * Only changed values are written, so entities which don't move don't dirty the transform hierarchy.
+ * Runs on the calling thread, transform nodes must be changed on the main thread.
+ */
+public class MeshTransformSystem implements EntitySystem {
+    private final Vector3f value = new Vector3f();
+    private final EntityWorld.ChunkAction sync = this::sync;
+
+    /**
+     * Create entity driving the mesh, initial position and rotation are taken from the mesh
+     * @param world entity world
+     * @param mesh mesh, rendered by the scene it is added to
+     * @return entity id
+     */
+    public static int createEntity(EntityWorld world, Mesh mesh) {
+        int entity = world.create(MESH, POSITION, ROTATION);
+        world.setObject(entity, MESH, mesh);
+        var position = mesh.getPosition();
+        world.setFloats(entity, POSITION, position.x(), position.y(), position.z());
+        var rotation = mesh.getRotation();
+        world.setFloats(entity, ROTATION, rotation.x(), rotation.y(), rotation.z());
+        return entity;
+    }
+
+    @Override
+    public void update(EntityWorld world, float deltaTime) {
+        world.forEach(sync, MESH, POSITION, ROTATION);
+    }
+
+    private void sync(Archetype archetype, int from, int to) {
+        var meshes = archetype.objects(MESH);
+        var positions = archetype.floats(POSITION);
+        var rotations = archetype.floats(ROTATION);
+        for (int row = from; row < to; row++) {
+            var mesh = (Mesh) meshes[row];
+            int i = row * 3;
+            if (!mesh.getPosition().equals(positions[i], positions[i + 1], positions[i + 2])) {
+                mesh.setPosition(value.set(positions[i], positions[i + 1], positions[i + 2]));
+            }
+            if (!mesh.getRotation().equals(rotations[i], rotations[i + 1], rotations[i + 2])) {
+                mesh.setRotation(value.set(rotations[i], rotations[i + 1], rotations[i + 2]));
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package org.opengame.engine.ecs;
+
+import static org.opengame.engine.ecs.Components.POSITION;
+import static org.opengame.engine.ecs.Components.VELOCITY;
+
+/**
+ * Moves entities with velocity, rows are processed in parallel
+ */
+public class MovementSystem implements EntitySystem {
+    private float deltaTime;
+    private final EntityWorld.ChunkAction move = this::move;
+
+    @Override
+    public void update(EntityWorld world, float deltaTime) {
+        this.deltaTime = deltaTime;
+        world.forEachParallel(move, POSITION, VELOCITY);
+    }
+
+    private void move(Archetype archetype, int from, int to) {
+        var positions = archetype.floats(POSITION);
+        var velocities = archetype.floats(VELOCITY);
+        float delta = deltaTime;
+        for (int i = from * 3, end = to * 3; i < end; i++) {
+            positions[i] += velocities[i] * delta;
+        }
+    }
+}
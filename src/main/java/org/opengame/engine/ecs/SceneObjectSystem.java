@@ -0,0 +1,37 @@
+package org.opengame.engine.ecs;
+
+import org.opengame.engine.object.SceneObject;
+
+import static org.opengame.engine.ecs.Components.SCENE_OBJECT;
+
+/**
+ * Adapter for existing scene objects like cameras: updates them from the entity world
+ * instead of the scene object list. Runs on the calling thread.
+ */
+public class SceneObjectSystem implements EntitySystem {
+    private final EntityWorld.ChunkAction updateObjects = SceneObjectSystem::updateObjects;
+
+    /**
+     * Create entity updating the object. The object should not be updated by the scene as well
+     * @param world entity world
+     * @param object scene object
+     * @return entity id
+     */
+    public static int createEntity(EntityWorld world, SceneObject object) {
+        int entity = world.create(SCENE_OBJECT);
+        world.setObject(entity, SCENE_OBJECT, object);
+        return entity;
+    }
+
+    @Override
+    public void update(EntityWorld world, float deltaTime) {
+        world.forEach(updateObjects, SCENE_OBJECT);
+    }
+
+    private static void updateObjects(Archetype archetype, int from, int to) {
+        var objects = archetype.objects(SCENE_OBJECT);
+        for (int row = from; row < to; row++) {
+            ((SceneObject) objects[row]).update();
+        }
+    }
+}
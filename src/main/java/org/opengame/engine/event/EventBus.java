@@ -2,40 +2,249 @@ package org.opengame.engine.event;
 
 import lombok.extern.java.Log;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.Consumer;
 
 /**
- * Connect event producers and consumers
+ * Connect event producers and consumers.
+ * Events are either broadcast right away or, in queued mode, published into a preallocated ring buffer
+ * and dispatched on the main thread by {@link #dispatchQueued()}. Publishing doesn't lock or allocate,
+ * it can be done from any thread. Consecutive queued MOUSE_MOVED events are coalesced into the last one.
+ * Event data passed to listeners of queued events is reused, listeners must copy values they keep.
  */
 @Log
 public enum EventBus {
     INSTANCE;
 
-    private final Map<EventType, List<Consumer<EventData>>> eventListeners;
+    private static final int QUEUE_CAPACITY = 4096;
 
+    /**
+     * Copy on write, indexed by event type ordinal. Arrays are filled before they are published
+     * and never modified, the atomic array makes them visible to broadcasting threads
+     */
+    private final AtomicReferenceArray<Consumer<EventData>[]> eventListeners;
+
+    private final EventSlot[] queue = new EventSlot[QUEUE_CAPACITY];
+    /**
+     * Next sequence to claim by producers
+     */
+    private final AtomicLong queueTail = new AtomicLong();
+    /**
+     * Next sequence to dispatch, written by the consumer only
+     */
+    private volatile long queueHead;
+    private volatile boolean queued;
+
+    private final AtomicLong droppedCount = new AtomicLong();
+    private long coalescedCount;
+    private long dispatchedCount;
+
+    /**
+     * Reused data of dispatched queued events
+     */
+    private final KeyEventData keyEventData = new KeyEventData();
+    private final MouseEventData mouseEventData = new MouseEventData();
+
+    private static final class EventSlot {
+        private EventType type;
+        private EventData data;
+        private int keyCode;
+        private boolean pressed;
+        private double x;
+        private double y;
+        /**
+         * Sequence of the event in the slot, written last by producer
+         */
+        private volatile long sequence = -1;
+    }
+
+    @SuppressWarnings("unchecked")
     EventBus() {
-        eventListeners = new HashMap<>();
+        eventListeners = new AtomicReferenceArray<>(EventType.values().length);
+        for (var type : EventType.values()) {
+            eventListeners.set(type.ordinal(), new Consumer[0]);
+        }
+        for (int i = 0; i < QUEUE_CAPACITY; i++) {
+            queue[i] = new EventSlot();
+        }
     }
 
-    public static void subscribeToEvent(EventType eventType, Consumer<EventData> consumer) {
+    public static synchronized void subscribeToEvent(EventType eventType, Consumer<EventData> consumer) {
         log.info("Subscribed to " + eventType);
 
-        if (!INSTANCE.eventListeners.containsKey(eventType)) {
-            INSTANCE.eventListeners.put(eventType, new ArrayList<>());
-        }
+        var listeners = INSTANCE.eventListeners.get(eventType.ordinal());
+        var newListeners = Arrays.copyOf(listeners, listeners.length + 1);
+        newListeners[listeners.length] = consumer;
+        INSTANCE.eventListeners.set(eventType.ordinal(), newListeners);
+    }
 
-        INSTANCE.eventListeners.get(eventType).add(consumer);
+    public static synchronized void unsubscribeFromEvent(EventType eventType, Consumer<EventData> consumer) {
+        var listeners = INSTANCE.eventListeners.get(eventType.ordinal());
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == consumer) {
+                var newListeners = Arrays.copyOf(listeners, listeners.length - 1);
+                System.arraycopy(listeners, i + 1, newListeners, i, listeners.length - i - 1);
+                INSTANCE.eventListeners.set(eventType.ordinal(), newListeners);
+                return;
+            }
+        }
     }
 
     public static void broadcastEvent(EventType eventType, EventData data) {
         //log.warning("Event broadcast " + eventType);
 
-        if (!INSTANCE.eventListeners.containsKey(eventType)) return;
+        for (var consumer : INSTANCE.eventListeners.get(eventType.ordinal())) {
+            consumer.accept(data);
+        }
+    }
+
+    /**
+     * @param queued publish methods queue events until {@link #dispatchQueued()} instead of broadcasting them
+     */
+    public static void setQueued(boolean queued) {
+        INSTANCE.queued = queued;
+    }
+
+    public static boolean isQueued() {
+        return INSTANCE.queued;
+    }
+
+    /**
+     * Publish key or mouse button event
+     * @param eventType KEY_PRESSED, KEY_RELEASED or MOUSE_BUTTON_EVENT
+     */
+    public static void publishKeyEvent(EventType eventType, int keyCode, boolean pressed) {
+        if (!INSTANCE.queued) {
+            broadcastEvent(eventType, new KeyEventData(keyCode, pressed));
+            return;
+        }
+
+        var slot = INSTANCE.claim();
+        if (slot == null) return;
+        slot.type = eventType;
+        slot.keyCode = keyCode;
+        slot.pressed = pressed;
+        INSTANCE.publish(slot);
+    }
+
+    public static void publishMouseMoved(double x, double y) {
+        if (!INSTANCE.queued) {
+            broadcastEvent(EventType.MOUSE_MOVED, new MouseEventData(x, y));
+            return;
+        }
+
+        var slot = INSTANCE.claim();
+        if (slot == null) return;
+        slot.type = EventType.MOUSE_MOVED;
+        slot.x = x;
+        slot.y = y;
+        INSTANCE.publish(slot);
+    }
+
+    /**
+     * Publish event with custom data, the data object is passed to listeners as is
+     */
+    public static void publishEvent(EventType eventType, EventData data) {
+        if (!INSTANCE.queued) {
+            broadcastEvent(eventType, data);
+            return;
+        }
+
+        var slot = INSTANCE.claim();
+        if (slot == null) return;
+        slot.type = eventType;
+        slot.data = data;
+        INSTANCE.publish(slot);
+    }
+
+    /**
+     * Broadcast queued events in publishing order, must be called on the main thread.
+     * Events published by listeners during dispatch wait for the next call
+     */
+    public static void dispatchQueued() {
+        INSTANCE.dispatch();
+    }
+
+    /**
+     * @return events lost because the queue was full
+     */
+    public static long getDroppedCount() {
+        return INSTANCE.droppedCount.get();
+    }
+
+    public static long getCoalescedCount() {
+        return INSTANCE.coalescedCount;
+    }
+
+    public static long getDispatchedCount() {
+        return INSTANCE.dispatchedCount;
+    }
+
+    /**
+     * Claim next slot, lock free. Full queue drops the event instead of blocking the producer
+     * @return slot to fill or null if the queue is full
+     */
+    private EventSlot claim() {
+        long sequence;
+        do {
+            sequence = queueTail.get();
+            if (sequence - queueHead >= QUEUE_CAPACITY) {
+                droppedCount.incrementAndGet();
+                return null;
+            }
+        } while (!queueTail.compareAndSet(sequence, sequence + 1));
+
+        var slot = queue[(int) (sequence & (QUEUE_CAPACITY - 1))];
+        slot.data = null;
+        // sequence is not published yet, store it negated until the slot is filled
+        slot.sequence = -sequence - 2;
+        return slot;
+    }
+
+    private void publish(EventSlot slot) {
+        slot.sequence = -slot.sequence - 2;
+    }
+
+    private void dispatch() {
+        long head = queueHead;
+        long end = queueTail.get();
+        while (head < end) {
+            var slot = queue[(int) (head & (QUEUE_CAPACITY - 1))];
+            if (slot.sequence != head) {
+                // claimed but not filled yet, dispatched next time
+                break;
+            }
+
+            var type = slot.type;
+            if (type == EventType.MOUSE_MOVED && slot.data == null && isMouseMovedNext(head + 1, end)) {
+                coalescedCount++;
+                queueHead = ++head;
+                continue;
+            }
+
+            EventData data;
+            if (slot.data != null) {
+                data = slot.data;
+                slot.data = null;
+            } else if (type == EventType.MOUSE_MOVED) {
+                data = mouseEventData.set(slot.x, slot.y);
+            } else {
+                data = keyEventData.set(slot.keyCode, slot.pressed);
+            }
+            // slot can be reused by producers from now on
+            queueHead = ++head;
+
+            broadcastEvent(type, data);
+            dispatchedCount++;
+        }
+    }
+
+    private boolean isMouseMovedNext(long sequence, long end) {
+        if (sequence >= end) return false;
 
-        INSTANCE.eventListeners.get(eventType).forEach((consumer) -> consumer.accept(data));
+        var next = queue[(int) (sequence & (QUEUE_CAPACITY - 1))];
+        return next.sequence == sequence && next.type == EventType.MOUSE_MOVED && next.data == null;
     }
 }
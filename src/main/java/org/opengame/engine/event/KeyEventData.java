@@ -1,14 +1,23 @@
 package org.opengame.engine.event;
 
+import lombok.AllArgsConstructor;
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
+import lombok.NoArgsConstructor;
 
 /**
- * Data provided with KEY_PRESSED event
+ * Data provided with KEY_PRESSED event.
+ * Instances of queued events are reused, valid only during dispatch
  */
-@RequiredArgsConstructor
+@AllArgsConstructor
+@NoArgsConstructor
 @Getter
 public class KeyEventData extends EventData {
-    private final int keyCode;
-    private final boolean isPressed;
-}
\ No newline at end of file
+    private int keyCode;
+    private boolean isPressed;
+
+    KeyEventData set(int keyCode, boolean isPressed) {
+        this.keyCode = keyCode;
+        this.isPressed = isPressed;
+        return this;
+    }
+}
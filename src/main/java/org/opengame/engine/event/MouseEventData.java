@@ -1,11 +1,22 @@
 package org.opengame.engine.event;
 
+import lombok.AllArgsConstructor;
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
+import lombok.NoArgsConstructor;
 
-@RequiredArgsConstructor
+/**
+ * Instances of queued events are reused, valid only during dispatch
+ */
+@AllArgsConstructor
+@NoArgsConstructor
 @Getter
 public class MouseEventData extends EventData {
-    private final double xPos;
-    private final double yPos;
-}
\ No newline at end of file
+    private double xPos;
+    private double yPos;
+
+    MouseEventData set(double xPos, double yPos) {
+        this.xPos = xPos;
+        this.yPos = yPos;
+        return this;
+    }
+}
@@ -0,0 +1,164 @@
+package org.opengame.engine.input;
+
+import java.util.Arrays;
+
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_LAST;
+import static org.lwjgl.glfw.GLFW.GLFW_MOUSE_BUTTON_LAST;
+
+/**
+ * Snapshot of keyboard and mouse state for polling from update code.
+ * Filled by window callbacks, keys and buttons are kept as bitsets, presses and releases since the last tick
+ * as edge bitsets, cursor motion is accumulated into deltas. Edges and deltas are cleared after every
+ * simulation tick, so a press shorter than a tick is still seen once and nothing drifts if events are missed.
+ * Must be used on the main thread.
+ */
+public enum InputState {
+    INSTANCE;
+
+    private static final int KEY_WORDS = (GLFW_KEY_LAST + Long.SIZE) / Long.SIZE;
+
+    private final long[] keysDown = new long[KEY_WORDS];
+    private final long[] keysPressed = new long[KEY_WORDS];
+    private final long[] keysReleased = new long[KEY_WORDS];
+    private int buttonsDown;
+    private int buttonsPressed;
+    private int buttonsReleased;
+
+    private boolean hasCursor;
+    private double cursorX;
+    private double cursorY;
+    private double cursorDeltaX;
+    private double cursorDeltaY;
+
+    /**
+     * @param key GLFW key code
+     */
+    public static boolean isKeyDown(int key) {
+        return isSet(INSTANCE.keysDown, key);
+    }
+
+    /**
+     * @param key GLFW key code
+     * @return key went down since the last tick, even if it is already released
+     */
+    public static boolean wasKeyPressed(int key) {
+        return isSet(INSTANCE.keysPressed, key);
+    }
+
+    /**
+     * @param key GLFW key code
+     * @return key went up since the last tick
+     */
+    public static boolean wasKeyReleased(int key) {
+        return isSet(INSTANCE.keysReleased, key);
+    }
+
+    /**
+     * @param button GLFW mouse button
+     */
+    public static boolean isButtonDown(int button) {
+        return isSet(INSTANCE.buttonsDown, button);
+    }
+
+    public static boolean wasButtonPressed(int button) {
+        return isSet(INSTANCE.buttonsPressed, button);
+    }
+
+    public static boolean wasButtonReleased(int button) {
+        return isSet(INSTANCE.buttonsReleased, button);
+    }
+
+    public static double getCursorX() {
+        return INSTANCE.cursorX;
+    }
+
+    public static double getCursorY() {
+        return INSTANCE.cursorY;
+    }
+
+    /**
+     * @return cursor motion along x since the last tick in screen coordinates
+     */
+    public static double getCursorDeltaX() {
+        return INSTANCE.cursorDeltaX;
+    }
+
+    /**
+     * @return cursor motion along y since the last tick in screen coordinates
+     */
+    public static double getCursorDeltaY() {
+        return INSTANCE.cursorDeltaY;
+    }
+
+    public static void onKey(int key, boolean pressed) {
+        if (key < 0 || key > GLFW_KEY_LAST) return;
+
+        var state = INSTANCE;
+        int word = key >>> 6;
+        long bit = 1L << key;
+        if (pressed) {
+            state.keysDown[word] |= bit;
+            state.keysPressed[word] |= bit;
+        } else {
+            state.keysDown[word] &= ~bit;
+            state.keysReleased[word] |= bit;
+        }
+    }
+
+    public static void onButton(int button, boolean pressed) {
+        if (button < 0 || button > GLFW_MOUSE_BUTTON_LAST) return;
+
+        var state = INSTANCE;
+        int bit = 1 << button;
+        if (pressed) {
+            state.buttonsDown |= bit;
+            state.buttonsPressed |= bit;
+        } else {
+            state.buttonsDown &= ~bit;
+            state.buttonsReleased |= bit;
+        }
+    }
+
+    public static void onCursor(double x, double y) {
+        var state = INSTANCE;
+        // first position only sets the origin, no jump from 0, 0
+        if (state.hasCursor) {
+            state.cursorDeltaX += x - state.cursorX;
+            state.cursorDeltaY += y - state.cursorY;
+        }
+        state.hasCursor = true;
+        state.cursorX = x;
+        state.cursorY = y;
+    }
+
+    /**
+     * Clear edges and cursor deltas, called by the engine after every simulation tick
+     */
+    public static void nextTick() {
+        var state = INSTANCE;
+        Arrays.fill(state.keysPressed, 0);
+        Arrays.fill(state.keysReleased, 0);
+        state.buttonsPressed = 0;
+        state.buttonsReleased = 0;
+        state.cursorDeltaX = 0;
+        state.cursorDeltaY = 0;
+    }
+
+    /**
+     * Release all keys and buttons, e.g. when the window loses focus and release events won't come
+     */
+    public static void reset() {
+        Arrays.fill(INSTANCE.keysDown, 0);
+        INSTANCE.buttonsDown = 0;
+        INSTANCE.hasCursor = false;
+        nextTick();
+    }
+
+    private static boolean isSet(long[] bits, int key) {
+        return key >= 0 && key <= GLFW_KEY_LAST && (bits[key >>> 6] & 1L << key) != 0;
+    }
+
+    private static boolean isSet(int bits, int button) {
+        return button >= 0 && button <= GLFW_MOUSE_BUTTON_LAST && (bits & 1 << button) != 0;
+    }
+}
@@ -0,0 +1,21 @@
+package org.opengame.engine.object;
+
+import org.joml.FrustumIntersection;
+import org.opengame.engine.scene.Bounds;
+
+/**
+ * Something with bounds which can be skipped when it's out of view
+ */
+public interface Cullable {
+    /**
+     * Called on the main thread before the object is rendered in the frame
+     * @param frustum view frustum of the scene camera
+     * @return false if the object is certainly not visible
+     */
+    boolean isVisible(FrustumIntersection frustum);
+
+    /**
+     * @return current bounds in world space, used by the scene spatial index
+     */
+    Bounds getWorldBounds();
+}
@@ -0,0 +1,17 @@
+package org.opengame.engine.object;
+
+import org.joml.Vector3fc;
+
+/**
+ * Something which can be drawn with one of several levels of detail
+ */
+public interface LodSelectable {
+    /**
+     * Select level of detail for the next submissions, called once per frame on the main thread
+     * @param eye camera position
+     * @param projectionScale cotangent of the half vertical field of view of the camera,
+     *                        size / distance * projectionScale is the fraction of half of the view height
+     * @return selected level, 0 - full detail
+     */
+    int selectLod(Vector3fc eye, float projectionScale);
+}
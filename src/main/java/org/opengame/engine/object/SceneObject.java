@@ -1,12 +1,21 @@
 package org.opengame.engine.object;
 
+import lombok.Setter;
 import lombok.extern.java.Log;
 
+import java.util.function.Consumer;
+
 /**
  * Something that can be added to the scene
  */
 @Log
 public class SceneObject implements Renderable, DynamicObject {
+    /**
+     * Notified when the object changes its transform, set by the scene holding the object
+     */
+    @Setter
+    private Consumer<SceneObject> moveListener;
+
     @Override
     public void frame(float time, float frameTimeMs) {
         // override in children
@@ -16,4 +25,13 @@ public class SceneObject implements Renderable, DynamicObject {
     public void update() {
         // override in children
     }
+
+    /**
+     * Call after position, rotation or shape of the object changes
+     */
+    protected void moved() {
+        if (moveListener != null) {
+            moveListener.accept(this);
+        }
+    }
 }
@@ -0,0 +1,14 @@
+package org.opengame.engine.object;
+
+import org.joml.Vector3fc;
+
+/**
+ * Something which can be ordered in the render queue by its render state
+ */
+public interface Sortable extends Submittable {
+    /**
+     * @param eye camera position
+     * @return sort key created with RenderQueue.createKey, view bits are replaced by the rendering camera
+     */
+    long getSortKey(Vector3fc eye);
+}
@@ -0,0 +1,14 @@
+package org.opengame.engine.object;
+
+/**
+ * Something that can record its draw calls into a given bgfx encoder,
+ * can be called from render worker threads
+ */
+public interface Submittable {
+    /**
+     * @param encoder bgfx encoder owned by calling thread
+     * @param view bgfx view id
+     * @param depth sort depth of the draw inside the view
+     */
+    void submit(long encoder, int view, int depth);
+}
@@ -0,0 +1,53 @@
+package org.opengame.engine.profiler;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import lombok.Setter;
+
+/**
+ * JFR event spanning one iteration of the main loop, from polling events to bgfx_frame
+ */
+@Name("opengame.Frame")
+@Label("Frame")
+@Category({"OpenGameEngine", "Frame"})
+@Description("One iteration of the engine main loop")
+@StackTrace(false)
+@Setter
+public class FrameEvent extends Event {
+    private static final EventType TYPE = EventType.getEventType(FrameEvent.class);
+
+    @Label("Frame")
+    private long frame;
+    @Label("Ticks")
+    @Description("Simulation ticks executed in the frame")
+    private int ticks;
+    @Label("Dropped Ticks")
+    @Description("Ticks skipped by the catch-up limit in the frame")
+    private long droppedTicks;
+    @Label("Scene Objects")
+    private int sceneObjects;
+    @Label("Drawn")
+    @Description("Cullable objects rendered, summed over cameras")
+    private int drawn;
+    @Label("Culled")
+    private int culled;
+    @Label("Draws")
+    @Description("Entries of the render queue")
+    private int draws;
+    @Label("Pending Uploads")
+    @Description("Asynchronously loaded assets waiting for GPU upload after the frame")
+    private int pendingUploads;
+
+    /**
+     * Checked before the event is created, so the main loop doesn't allocate events while nothing records them
+     * @return true if a running recording has the event enabled
+     */
+    public static boolean isRecording() {
+        return TYPE.isEnabled();
+    }
+}
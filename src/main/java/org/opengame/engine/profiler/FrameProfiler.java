@@ -0,0 +1,198 @@
+package org.opengame.engine.profiler;
+
+import org.lwjgl.bgfx.BGFXStats;
+
+import java.util.Arrays;
+
+import static org.lwjgl.bgfx.BGFX.nbgfx_get_stats;
+
+/**
+ * Per frame CPU phase timings and bgfx stats.
+ * Phases are timed with nestable scopes, a phase entered several times per frame (e.g. update ticks)
+ * accumulates its time. At the end of the frame all metrics are stored into preallocated ring buffers
+ * of the last {@link #HISTORY_SIZE} frames, percentiles are computed from them on request.
+ * Doesn't allocate after class initialization. Must be used on the main thread.
+ */
+public enum FrameProfiler {
+    INSTANCE;
+
+    public static final int HISTORY_SIZE = 256;
+    private static final int MAX_DEPTH = 32;
+    private final long[][] history = new long[ProfilerMetric.values().length][HISTORY_SIZE];
+    private final long[] current = new long[ProfilerMetric.values().length];
+    private final long[] sortScratch = new long[HISTORY_SIZE];
+    /**
+     * Frames recorded since start
+     */
+    private long frameCount;
+    private long frameStart;
+    private boolean enabled = true;
+
+    private final ProfilerMetric[] stackMetrics = new ProfilerMetric[MAX_DEPTH];
+    private final long[] stackStarts = new long[MAX_DEPTH];
+    private int depth;
+    private final Scope[] scopes = new Scope[ProfilerMetric.values().length];
+
+    /**
+     * Timer closed at the end of try-with-resources block, one reused instance per metric
+     */
+    public static final class Scope implements AutoCloseable {
+        private final ProfilerMetric metric;
+
+        private Scope(ProfilerMetric metric) {
+            this.metric = metric;
+        }
+
+        @Override
+        public void close() {
+            end(metric);
+        }
+    }
+
+    FrameProfiler() {
+        for (var metric : ProfilerMetric.values()) {
+            scopes[metric.ordinal()] = new Scope(metric);
+        }
+    }
+
+    public static void setEnabled(boolean enabled) {
+        INSTANCE.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return INSTANCE.enabled;
+    }
+
+    /**
+     * Start timing a phase, it has to be ended with {@link #end(ProfilerMetric)} before its parent
+     */
+    public static void begin(ProfilerMetric metric) {
+        var profiler = INSTANCE;
+        if (!profiler.enabled) return;
+
+        if (profiler.depth == MAX_DEPTH) {
+            throw new IllegalStateException("Profiler scopes nested deeper than " + MAX_DEPTH);
+        }
+        profiler.stackMetrics[profiler.depth] = metric;
+        profiler.stackStarts[profiler.depth] = System.nanoTime();
+        profiler.depth++;
+    }
+
+    public static void end(ProfilerMetric metric) {
+        var profiler = INSTANCE;
+        if (!profiler.enabled) return;
+
+        if (profiler.depth == 0 || profiler.stackMetrics[profiler.depth - 1] != metric) {
+            throw new IllegalStateException("Profiler scope " + metric + " is not the innermost open scope");
+        }
+        profiler.depth--;
+        profiler.current[metric.ordinal()] += System.nanoTime() - profiler.stackStarts[profiler.depth];
+    }
+
+    /**
+     * Start timing a phase ended by closing the returned scope
+     * <pre>
+     * try (var scope = FrameProfiler.scope(ProfilerMetric.UPDATE)) { ... }
+     * </pre>
+     */
+    public static Scope scope(ProfilerMetric metric) {
+        begin(metric);
+        return INSTANCE.scopes[metric.ordinal()];
+    }
+
+    /**
+     * Called by the engine at the start of every frame
+     */
+    public static void beginFrame() {
+        INSTANCE.frameStart = System.nanoTime();
+    }
+
+    /**
+     * Called by the engine after bgfx_frame, stores phase timings and bgfx stats of the frame
+     */
+    public static void endFrame() {
+        var profiler = INSTANCE;
+        if (!profiler.enabled) return;
+
+        if (profiler.depth != 0) {
+            throw new IllegalStateException("Profiler scope " + profiler.stackMetrics[profiler.depth - 1]
+                    + " is still open at the end of the frame");
+        }
+        var current = profiler.current;
+        current[ProfilerMetric.FRAME.ordinal()] = System.nanoTime() - profiler.frameStart;
+        profiler.readBgfxStats();
+
+        int slot = (int) (profiler.frameCount % HISTORY_SIZE);
+        for (int i = 0; i < current.length; i++) {
+            profiler.history[i][slot] = current[i];
+        }
+        Arrays.fill(current, 0);
+        profiler.frameCount++;
+    }
+
+    public static long getFrameCount() {
+        return INSTANCE.frameCount;
+    }
+
+    /**
+     * @return value of the last recorded frame, nanoseconds for time metrics
+     */
+    public static long getLast(ProfilerMetric metric) {
+        var profiler = INSTANCE;
+        if (profiler.frameCount == 0) return 0;
+        return profiler.history[metric.ordinal()][(int) ((profiler.frameCount - 1) % HISTORY_SIZE)];
+    }
+
+    /**
+     * @param metric metric
+     * @param percentile 0 - 100, 100 is the max
+     * @return nearest rank percentile over recorded history, nanoseconds for time metrics
+     */
+    public static long getPercentile(ProfilerMetric metric, double percentile) {
+        var profiler = INSTANCE;
+        int count = (int) Math.min(profiler.frameCount, HISTORY_SIZE);
+        if (count == 0) return 0;
+
+        var values = profiler.sortScratch;
+        System.arraycopy(profiler.history[metric.ordinal()], 0, values, 0, count);
+        Arrays.sort(values, 0, count);
+        int rank = (int) Math.ceil(percentile / 100.0 * count);
+        return values[Math.max(0, Math.min(count - 1, rank - 1))];
+    }
+
+    /**
+     * Forget recorded history, e.g. after loading a level
+     */
+    public static void reset() {
+        var profiler = INSTANCE;
+        for (var values : profiler.history) {
+            Arrays.fill(values, 0);
+        }
+        Arrays.fill(profiler.current, 0);
+        profiler.frameCount = 0;
+        profiler.depth = 0;
+    }
+
+    private void readBgfxStats() {
+        long stats = nbgfx_get_stats();
+        if (stats == 0) return;
+
+        long cpuFrequency = BGFXStats.ncpuTimerFreq(stats);
+        if (cpuFrequency > 0) {
+            current[ProfilerMetric.RENDER_THREAD.ordinal()] = toNanos(
+                    BGFXStats.ncpuTimeEnd(stats) - BGFXStats.ncpuTimeBegin(stats), cpuFrequency);
+            current[ProfilerMetric.WAIT_RENDER.ordinal()] = toNanos(BGFXStats.nwaitRender(stats), cpuFrequency);
+            current[ProfilerMetric.WAIT_SUBMIT.ordinal()] = toNanos(BGFXStats.nwaitSubmit(stats), cpuFrequency);
+        }
+        long gpuFrequency = BGFXStats.ngpuTimerFreq(stats);
+        if (gpuFrequency > 0) {
+            current[ProfilerMetric.GPU.ordinal()] = toNanos(
+                    BGFXStats.ngpuTimeEnd(stats) - BGFXStats.ngpuTimeBegin(stats), gpuFrequency);
+        }
+        current[ProfilerMetric.DRAWS.ordinal()] = BGFXStats.nnumDraw(stats);
+    }
+
+    private static long toNanos(long ticks, long frequency) {
+        return Math.max(0, (long) (ticks * (1_000_000_000.0 / frequency)));
+    }
+}
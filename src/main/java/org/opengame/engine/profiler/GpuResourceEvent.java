@@ -0,0 +1,33 @@
+package org.opengame.engine.profiler;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import lombok.Setter;
+
+/**
+ * JFR event spanning creation or destruction of a bgfx resource
+ */
+@Name("opengame.GpuResource")
+@Label("GPU Resource")
+@Category({"OpenGameEngine", "Assets"})
+@Setter
+public class GpuResourceEvent extends Event {
+    @Label("Action")
+    @Description("create or destroy")
+    private String action;
+    @Label("Type")
+    @Description("TEXTURE, PROGRAM, SHADER, VERTEX_BUFFER or INDEX_BUFFER")
+    private String type;
+    @Label("Handle")
+    private int handle;
+    @Label("Name")
+    @Description("Asset key, file name or content hash")
+    private String name;
+    @Label("Size")
+    @DataAmount
+    private long bytes;
+}
@@ -0,0 +1,34 @@
+package org.opengame.engine.profiler;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import lombok.Setter;
+
+/**
+ * JFR event spanning model import into CPU memory, from the mesh cache or with assimp
+ */
+@Name("opengame.MeshImport")
+@Label("Mesh Import")
+@Category({"OpenGameEngine", "Assets"})
+@Setter
+public class MeshImportEvent extends Event {
+    @Label("Path")
+    private String path;
+    @Label("Cached")
+    @Description("Loaded from the binary mesh cache instead of assimp")
+    private boolean cached;
+    @Label("Meshes")
+    private int meshes;
+    @Label("Vertices")
+    private long vertices;
+    @Label("Indices")
+    private long indices;
+    @Label("Size")
+    @Description("Vertex and index data to upload")
+    @DataAmount
+    private long bytes;
+}
@@ -0,0 +1,47 @@
+package org.opengame.engine.profiler;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Value recorded by {@link FrameProfiler} once per frame.
+ * CPU phases are measured by scoped timers on the main thread, nested phases are included in their parents.
+ * bgfx values are read from bgfx stats of the last finished frame
+ */
+@RequiredArgsConstructor
+@Getter
+public enum ProfilerMetric {
+    /**
+     * Main thread time between frame starts
+     */
+    FRAME("frame", true),
+    POLL_EVENTS(" events", true),
+    UPLOADS(" uploads", true),
+    UPDATE(" update", true),
+    RENDER(" render", true),
+    SUBMIT("  submit", true),
+    BGFX_FRAME(" bgfx frame", true),
+    /**
+     * GPU time of the frame, 0 if the renderer doesn't provide timer queries
+     */
+    GPU("gpu", true),
+    /**
+     * bgfx render thread time of the frame
+     */
+    RENDER_THREAD("render thread", true),
+    /**
+     * Time the main thread waited for the render thread in bgfx_frame
+     */
+    WAIT_RENDER("wait render", true),
+    /**
+     * Time the render thread waited for the main thread
+     */
+    WAIT_SUBMIT("wait submit", true),
+    DRAWS("draws", false);
+
+    private final String label;
+    /**
+     * Value is time in nanoseconds, otherwise a count
+     */
+    private final boolean time;
+}
@@ -0,0 +1,93 @@
+package org.opengame.engine.profiler;
+
+import static org.lwjgl.bgfx.BGFX.bgfx_dbg_text_printf;
+
+/**
+ * Table of profiler metrics drawn with bgfx debug text: last frame and percentiles of the recorded history.
+ * Text is rebuilt in reused buffers every few frames so values stay readable, without allocation
+ */
+public class ProfilerOverlay {
+    private static final String TITLE = "OpenGameEngine 0.0.1-SNAPSHOT";
+    private static final String HEADER = "                  last     p50     p95     p99     max  [ms]";
+    private static final int REFRESH_FRAMES = 15;
+    private static final int LABEL_WIDTH = 14;
+    private static final int VALUE_WIDTH = 8;
+    private static final double[] PERCENTILES = {50, 95, 99, 100};
+    private static final ProfilerMetric[] METRICS = ProfilerMetric.values();
+
+    private final int x;
+    private final int y;
+    private final StringBuilder[] lines = new StringBuilder[METRICS.length];
+    private long lastRefreshFrame = -REFRESH_FRAMES;
+
+    /**
+     * @param x column of debug text
+     * @param y row of debug text
+     */
+    public ProfilerOverlay(int x, int y) {
+        this.x = x;
+        this.y = y;
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = new StringBuilder(LABEL_WIDTH + VALUE_WIDTH * (PERCENTILES.length + 1));
+        }
+    }
+
+    /**
+     * Print the table, debug text has to be enabled and cleared every frame
+     */
+    public void draw() {
+        long frame = FrameProfiler.getFrameCount();
+        if (frame - lastRefreshFrame >= REFRESH_FRAMES) {
+            refresh();
+            lastRefreshFrame = frame;
+        }
+
+        bgfx_dbg_text_printf(x, y, 0x6f, TITLE);
+        bgfx_dbg_text_printf(x, y + 1, 0x0f, HEADER);
+        for (int i = 0; i < lines.length; i++) {
+            bgfx_dbg_text_printf(x, y + 2 + i, 0x0f, lines[i]);
+        }
+    }
+
+    private void refresh() {
+        for (var metric : METRICS) {
+            var line = lines[metric.ordinal()];
+            line.setLength(0);
+            line.append(metric.getLabel());
+            pad(line, LABEL_WIDTH);
+
+            appendValue(line, metric, FrameProfiler.getLast(metric));
+            for (var percentile : PERCENTILES) {
+                appendValue(line, metric, FrameProfiler.getPercentile(metric, percentile));
+            }
+        }
+    }
+
+    private static void appendValue(StringBuilder line, ProfilerMetric metric, long value) {
+        int end = line.length() + VALUE_WIDTH;
+        // right aligned, digits are appended first and moved behind the padding
+        int start = line.length();
+        if (metric.isTime()) {
+            // milliseconds with 2 decimals, StringBuilder.append(double) would allocate
+            long hundredths = (value + 5_000) / 10_000;
+            line.append(hundredths / 100).append('.');
+            long fraction = hundredths % 100;
+            if (fraction < 10) {
+                line.append('0');
+            }
+            line.append(fraction);
+        } else {
+            line.append(value);
+        }
+        int padding = end - line.length();
+        for (int i = 0; i < padding; i++) {
+            line.insert(start, ' ');
+        }
+    }
+
+    private static void pad(StringBuilder line, int width) {
+        while (line.length() < width) {
+            line.append(' ');
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package org.opengame.engine.profiler;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import lombok.Setter;
+
+/**
+ * JFR event spanning read of a resource file, e.g. texture or shader
+ */
+@Name("opengame.ResourceLoad")
+@Label("Resource Load")
+@Category({"OpenGameEngine", "Assets"})
+@Setter
+public class ResourceLoadEvent extends Event {
+    @Label("Type")
+    @Description("texture, shader or resource")
+    private String type;
+    @Label("Path")
+    private String path;
+    @Label("Size")
+    @DataAmount
+    private long bytes;
+}
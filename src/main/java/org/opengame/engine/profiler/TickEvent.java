@@ -0,0 +1,35 @@
+package org.opengame.engine.profiler;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import lombok.Setter;
+
+/**
+ * JFR event spanning one fixed rate simulation tick
+ */
+@Name("opengame.Tick")
+@Label("Simulation Tick")
+@Category({"OpenGameEngine", "Frame"})
+@StackTrace(false)
+@Setter
+public class TickEvent extends Event {
+    private static final EventType TYPE = EventType.getEventType(TickEvent.class);
+
+    @Label("Tick")
+    private long tick;
+    @Label("Frame")
+    private long frame;
+    @Label("Scene Objects")
+    private int sceneObjects;
+
+    /**
+     * @return true if a running recording has the event enabled
+     */
+    public static boolean isRecording() {
+        return TYPE.isEnabled();
+    }
+}
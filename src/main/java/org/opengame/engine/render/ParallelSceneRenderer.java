@@ -0,0 +1,108 @@
+package org.opengame.engine.render;
+
+import lombok.Getter;
+import lombok.extern.java.Log;
+import org.opengame.engine.profiler.FrameProfiler;
+import org.opengame.engine.profiler.ProfilerMetric;
+import org.opengame.engine.scene.Scene;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.lwjgl.bgfx.BGFX.bgfx_encoder_begin;
+import static org.lwjgl.bgfx.BGFX.bgfx_encoder_end;
+
+/**
+ * Submits scene draw calls from a pool of worker threads.
+ * Sorted render queue of the scene is split into contiguous ranges, one per worker, every worker records
+ * its range into its own bgfx encoder held for the whole frame. Queue rank is used as sort depth,
+ * so draw order doesn't depend on thread scheduling.
+ */
+@Log
+public class ParallelSceneRenderer {
+    @Getter
+    private final int threadCount;
+    private final ExecutorService workers;
+    private final Worker[] workerTasks;
+    private final AtomicReference<Throwable> workerError = new AtomicReference<>();
+
+    private RenderQueue frameQueue;
+    private CountDownLatch frameDone;
+
+    public ParallelSceneRenderer(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Render thread count must be positive");
+        }
+        this.threadCount = threadCount;
+
+        var threadNumber = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(threadCount, (runnable) -> {
+            var thread = new Thread(runnable, "render-worker-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        workerTasks = new Worker[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            workerTasks[i] = new Worker(i);
+        }
+
+        log.info("Parallel rendering with " + threadCount + " threads");
+    }
+
+    public void render(Scene scene, float time, float frameTime, float interpolationAlpha) {
+        frameQueue = scene.prepareRender(time, frameTime, interpolationAlpha);
+
+        try (var scope = FrameProfiler.scope(ProfilerMetric.SUBMIT)) {
+            frameDone = new CountDownLatch(threadCount);
+            for (var worker : workerTasks) {
+                workers.execute(worker);
+            }
+
+            frameDone.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for render workers", e);
+        }
+
+        var error = workerError.getAndSet(null);
+        if (error != null) {
+            throw new RuntimeException("Render worker failed", error);
+        }
+    }
+
+    public void dispose() {
+        workers.shutdown();
+    }
+
+    private class Worker implements Runnable {
+        private final int index;
+
+        private Worker(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void run() {
+            try {
+                int size = frameQueue.getSize();
+                int from = (int) ((long) size * index / threadCount);
+                int to = (int) ((long) size * (index + 1) / threadCount);
+
+                long encoder = bgfx_encoder_begin(true);
+                if (encoder == 0) {
+                    throw new IllegalStateException("No free bgfx encoder, increase max encoders limit");
+                }
+                frameQueue.submit(encoder, from, to);
+                bgfx_encoder_end(encoder);
+            } catch (Throwable e) {
+                workerError.compareAndSet(null, e);
+            } finally {
+                frameDone.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package org.opengame.engine.render;
+
+import lombok.Getter;
+import org.opengame.engine.object.Submittable;
+
+import java.util.Arrays;
+
+/**
+ * Draws of one frame ordered by 64 bit sort keys.
+ * Keys are kept in a primitive array next to draw indices and sorted with LSD radix sort,
+ * byte passes where all keys share the same value are skipped.
+ * Draw rank in the sorted queue is submitted as bgfx depth, the view is expected in depth ascending mode
+ * so bgfx keeps the queue order.
+ * <p>
+ * Key layout from the most significant bit:
+ * <pre>
+ * opaque:      view 8 | 0 | program 16 | texture 16 | depth 23   - grouped by state, front to back
+ * translucent: view 8 | 1 | inverted depth 23 | program 16 | texture 16   - back to front
+ * </pre>
+ */
+public class RenderQueue {
+    private static final int DEPTH_BITS = 23;
+    private static final long DEPTH_MASK = (1L << DEPTH_BITS) - 1;
+    private static final int TRANSLUCENT_SHIFT = 55;
+    private static final int VIEW_SHIFT = 56;
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX_SIZE = 1 << RADIX_BITS;
+    private static final int PASS_COUNT = Long.SIZE / RADIX_BITS;
+
+    private long[] keys = new long[64];
+    private long[] keysScratch = new long[64];
+    private int[] order = new int[64];
+    private int[] orderScratch = new int[64];
+    private Submittable[] items = new Submittable[64];
+    private Submittable[] sorted = new Submittable[64];
+    private final int[] histograms = new int[PASS_COUNT * RADIX_SIZE];
+    @Getter
+    private int size;
+
+    /**
+     * Draws sorted in the last frame
+     */
+    @Getter
+    private int drawCount;
+    @Getter
+    private int programSwitches;
+    @Getter
+    private int textureSwitches;
+
+    /**
+     * Create sort key
+     * @param view bgfx view id
+     * @param translucent blended draw, sorted back to front after opaque draws of the view
+     * @param program program handle
+     * @param texture texture handle
+     * @param depth distance from camera, negative values are clamped to 0
+     * @return sort key
+     */
+    public static long createKey(int view, boolean translucent, short program, short texture, float depth) {
+        long key = (long) (view & 0xff) << VIEW_SHIFT;
+        long state = (long) (program & 0xffff) << 16 | texture & 0xffff;
+        // bits of positive float grow with its value, top bits are quantized depth
+        long depthBits = depth > 0 ? Float.floatToRawIntBits(depth) >>> (Float.SIZE - 1 - DEPTH_BITS) : 0;
+        if (translucent) {
+            return key | 1L << TRANSLUCENT_SHIFT | (DEPTH_MASK - depthBits) << 32 | state;
+        }
+        return key | state << DEPTH_BITS | depthBits;
+    }
+
+    /**
+     * @param key sort key
+     * @param view bgfx view id
+     * @return key with replaced view
+     */
+    public static long withView(long key, int view) {
+        return key & ~(0xffL << VIEW_SHIFT) | (long) (view & 0xff) << VIEW_SHIFT;
+    }
+
+    public static int getView(long key) {
+        return (int) (key >>> VIEW_SHIFT);
+    }
+
+    public static short getProgram(long key) {
+        return (short) (isTranslucent(key) ? key >>> 16 : key >>> (DEPTH_BITS + 16));
+    }
+
+    public static short getTexture(long key) {
+        return (short) (isTranslucent(key) ? key : key >>> DEPTH_BITS);
+    }
+
+    public static boolean isTranslucent(long key) {
+        return (key >>> TRANSLUCENT_SHIFT & 1) != 0;
+    }
+
+    public void clear() {
+        Arrays.fill(sorted, 0, size, null);
+        Arrays.fill(items, 0, size, null);
+        size = 0;
+    }
+
+    public void add(Submittable item, long key) {
+        if (size == keys.length) {
+            grow();
+        }
+        items[size] = item;
+        keys[size] = key;
+        order[size] = size;
+        size++;
+    }
+
+    /**
+     * Sort added draws and update per frame stats
+     */
+    public void sort() {
+        radixSort();
+        for (int i = 0; i < size; i++) {
+            sorted[i] = items[order[i]];
+        }
+
+        drawCount = size;
+        programSwitches = 0;
+        textureSwitches = 0;
+        for (int i = 1; i < size; i++) {
+            if (getProgram(keys[i]) != getProgram(keys[i - 1])) {
+                programSwitches++;
+            }
+            if (getTexture(keys[i]) != getTexture(keys[i - 1])) {
+                textureSwitches++;
+            }
+        }
+    }
+
+    /**
+     * @param rank position in the sorted queue
+     * @return draw
+     */
+    public Submittable get(int rank) {
+        return sorted[rank];
+    }
+
+    public long getKey(int rank) {
+        return keys[rank];
+    }
+
+    /**
+     * Submit range of sorted draws into views of their keys, rank is used as draw depth
+     * @param encoder bgfx encoder owned by calling thread
+     * @param from first rank, inclusive
+     * @param to last rank, exclusive
+     */
+    public void submit(long encoder, int from, int to) {
+        for (int i = from; i < to; i++) {
+            sorted[i].submit(encoder, getView(keys[i]), i);
+        }
+    }
+
+    public String getStats() {
+        return "[draws: " + drawCount + "; program switches: " + programSwitches
+                + "; texture switches: " + textureSwitches + "]";
+    }
+
+    private void radixSort() {
+        Arrays.fill(histograms, 0);
+        for (int i = 0; i < size; i++) {
+            long key = keys[i];
+            for (int pass = 0; pass < PASS_COUNT; pass++) {
+                histograms[pass * RADIX_SIZE + (int) (key >>> (pass * RADIX_BITS) & (RADIX_SIZE - 1))]++;
+            }
+        }
+
+        for (int pass = 0; pass < PASS_COUNT; pass++) {
+            int offset = pass * RADIX_SIZE;
+            int shift = pass * RADIX_BITS;
+            // all keys have the same byte, pass wouldn't change the order
+            if (histograms[offset + (int) (keys[0] >>> shift & (RADIX_SIZE - 1))] == size) {
+                continue;
+            }
+
+            int sum = 0;
+            for (int bucket = 0; bucket < RADIX_SIZE; bucket++) {
+                int count = histograms[offset + bucket];
+                histograms[offset + bucket] = sum;
+                sum += count;
+            }
+
+            for (int i = 0; i < size; i++) {
+                long key = keys[i];
+                int destination = histograms[offset + (int) (key >>> shift & (RADIX_SIZE - 1))]++;
+                keysScratch[destination] = key;
+                orderScratch[destination] = order[i];
+            }
+
+            var swapKeys = keys;
+            keys = keysScratch;
+            keysScratch = swapKeys;
+            var swapOrder = order;
+            order = orderScratch;
+            orderScratch = swapOrder;
+        }
+    }
+
+    private void grow() {
+        int capacity = keys.length * 2;
+        keys = Arrays.copyOf(keys, capacity);
+        keysScratch = new long[capacity];
+        order = Arrays.copyOf(order, capacity);
+        orderScratch = new int[capacity];
+        items = Arrays.copyOf(items, capacity);
+        sorted = new Submittable[capacity];
+    }
+}
@@ -15,17 +15,16 @@ public class TestCube extends Mesh {
         super(getTestVertices(), getTestIndices(), "vs_cube", "fs_cube", null);
     }
 
-    private static Object[][] getTestVertices() {
-        return new Object[][]{
-                { -1.0f, 1.0f, 1.0f, 0xff000000 },
-                { 1.0f, 1.0f, 1.0f, 0xff0000ff },
-                { -1.0f, -1.0f, 1.0f, 0xff00ff00 },
-                { 1.0f, -1.0f, 1.0f, 0xff00ffff },
-                { -1.0f, 1.0f, -1.0f, 0xffff0000 },
-                { 1.0f, 1.0f, -1.0f, 0xffff00ff },
-                { -1.0f, -1.0f, -1.0f, 0xffffff00 },
-                { 1.0f, -1.0f, -1.0f, 0xffffffff }
-        };
+    private static VertexStream getTestVertices() {
+        return VertexStream.allocate(Mesh.createVertexLayout(false, true, false), 8)
+                .position(-1.0f, 1.0f, 1.0f).color(0xff000000)
+                .position(1.0f, 1.0f, 1.0f).color(0xff0000ff)
+                .position(-1.0f, -1.0f, 1.0f).color(0xff00ff00)
+                .position(1.0f, -1.0f, 1.0f).color(0xff00ffff)
+                .position(-1.0f, 1.0f, -1.0f).color(0xffff0000)
+                .position(1.0f, 1.0f, -1.0f).color(0xffff00ff)
+                .position(-1.0f, -1.0f, -1.0f).color(0xffffff00)
+                .position(1.0f, -1.0f, -1.0f).color(0xffffffff);
     }
 
     private static int[] getTestIndices() {
@@ -0,0 +1,421 @@
+package org.opengame.engine.render;
+
+import lombok.Getter;
+import org.joml.Vector3f;
+import org.lwjgl.bgfx.BGFXCaps;
+import org.lwjgl.bgfx.BGFXVertexLayout;
+import org.lwjgl.system.MemoryStack;
+import org.opengame.engine.Engine;
+
+import static org.lwjgl.bgfx.BGFX.*;
+import static org.lwjgl.system.MemoryUtil.*;
+
+/**
+ * Packs float vertex streams into compact formats.
+ * Positions are normalized to the bounding box of the stream and stored as normalized int16,
+ * the box is the dequantization transform of the stream which meshes fold into their model matrix,
+ * so shaders are unchanged. Texture coordinates are stored as normalized int16 if they fit [-1, 1],
+ * otherwise as half floats. Normals are octahedral encoded into two normalized int16 only on request,
+ * shaders reading such normals must decode them, the bundled shaders don't.
+ * An attribute stays float if its compact format exceeds the error tolerance.
+ */
+public final class VertexQuantizer {
+    private static final float INT16_MAX = Short.MAX_VALUE;
+
+    public enum PositionFormat {
+        /**
+         * 3 x float32, 12 bytes
+         */
+        FLOAT,
+        /**
+         * 4 x normalized int16, 8 bytes, fourth component is padding
+         */
+        INT16
+    }
+
+    public enum TexCoordFormat {
+        /**
+         * 2 x float32, 8 bytes
+         */
+        FLOAT,
+        /**
+         * 2 x float16, 4 bytes, needs {@link org.lwjgl.bgfx.BGFX#BGFX_CAPS_VERTEX_ATTRIB_HALF}
+         */
+        HALF,
+        /**
+         * 2 x normalized int16, 4 bytes, coordinates in [-1, 1] only
+         */
+        INT16
+    }
+
+    public enum NormalFormat {
+        /**
+         * 3 x float32, 12 bytes
+         */
+        FLOAT,
+        /**
+         * Octahedral encoding in 2 x normalized int16, 4 bytes. Shaders get the two encoded components
+         * in a_normal and must decode them, see {@link #getOctahedral}
+         */
+        OCTAHEDRAL
+    }
+
+    /**
+     * Vertex bytes of streams before and after quantization, summed over streams
+     */
+    @Getter
+    public static final class Statistics {
+        private long bytesBefore;
+        private long bytesAfter;
+        private int quantizedPositions;
+        private int quantizedTexCoords;
+        private int quantizedNormals;
+
+        private synchronized void add(int before, int after, boolean positions, boolean texCoords, boolean normals) {
+            bytesBefore += before;
+            bytesAfter += after;
+            quantizedPositions += positions ? 1 : 0;
+            quantizedTexCoords += texCoords ? 1 : 0;
+            quantizedNormals += normals ? 1 : 0;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "[vertex bytes: " + bytesBefore + " -> " + bytesAfter + "; quantized positions: "
+                    + quantizedPositions + "; quantized uvs: " + quantizedTexCoords
+                    + "; octahedral normals: " + quantizedNormals + "]";
+        }
+    }
+
+    private VertexQuantizer() {
+    }
+
+    /**
+     * Create vertex layout with given formats
+     * @param position position format
+     * @param normal normal format, null - no normals
+     * @param withColor add uint8 color
+     * @param texCoord texture coordinate format, null - no texture coordinates
+     * @return vertex layout
+     */
+    public static BGFXVertexLayout createLayout(PositionFormat position, NormalFormat normal, boolean withColor,
+                                                TexCoordFormat texCoord) {
+        var layout = BGFXVertexLayout.calloc();
+        bgfx_vertex_layout_begin(layout, Engine.getRenderer());
+
+        if (position == PositionFormat.INT16) {
+            bgfx_vertex_layout_add(layout, BGFX_ATTRIB_POSITION, 4, BGFX_ATTRIB_TYPE_INT16, true, false);
+        } else {
+            bgfx_vertex_layout_add(layout, BGFX_ATTRIB_POSITION, 3, BGFX_ATTRIB_TYPE_FLOAT, false, false);
+        }
+        if (normal == NormalFormat.OCTAHEDRAL) {
+            bgfx_vertex_layout_add(layout, BGFX_ATTRIB_NORMAL, 2, BGFX_ATTRIB_TYPE_INT16, true, false);
+        } else if (normal == NormalFormat.FLOAT) {
+            bgfx_vertex_layout_add(layout, BGFX_ATTRIB_NORMAL, 3, BGFX_ATTRIB_TYPE_FLOAT, false, false);
+        }
+        if (withColor) {
+            bgfx_vertex_layout_add(layout, BGFX_ATTRIB_COLOR0, 4, BGFX_ATTRIB_TYPE_UINT8, true, false);
+        }
+        if (texCoord == TexCoordFormat.INT16) {
+            bgfx_vertex_layout_add(layout, BGFX_ATTRIB_TEXCOORD0, 2, BGFX_ATTRIB_TYPE_INT16, true, false);
+        } else if (texCoord == TexCoordFormat.HALF) {
+            bgfx_vertex_layout_add(layout, BGFX_ATTRIB_TEXCOORD0, 2, BGFX_ATTRIB_TYPE_HALF, false, false);
+        } else if (texCoord == TexCoordFormat.FLOAT) {
+            bgfx_vertex_layout_add(layout, BGFX_ATTRIB_TEXCOORD0, 2, BGFX_ATTRIB_TYPE_FLOAT, true, true);
+        }
+
+        bgfx_vertex_layout_end(layout);
+        return layout;
+    }
+
+    /**
+     * Pack stream with float attributes into the most compact layout meeting the tolerances
+     * @param source stream with float position, optional float normal, uint8 color and float uv,
+     *               freed if a new stream is returned
+     * @param positionTolerance max position error relative to the largest size of the bounding box,
+     *                          0 - keep float positions
+     * @param texCoordTolerance max absolute texture coordinate error, 0 - keep float coordinates
+     * @param normalTolerance max angle between original and octahedral encoded normal in radians,
+     *                        0 - keep float normals
+     * @param statistics receives sizes of the stream
+     * @return quantized stream or the source if no attribute can be packed
+     */
+    public static VertexStream quantize(VertexStream source, float positionTolerance, float texCoordTolerance,
+                                        float normalTolerance, Statistics statistics) {
+        var sourceLayout = source.getLayout();
+        int vertexCount = source.getVertexCount();
+        if (source.isQuantized() || vertexCount == 0 || !isFloat(sourceLayout, BGFX_ATTRIB_POSITION, 3)) {
+            return source;
+        }
+        boolean hasNormal = isFloat(sourceLayout, BGFX_ATTRIB_NORMAL, 3);
+        boolean hasColor = bgfx_vertex_layout_has(sourceLayout, BGFX_ATTRIB_COLOR0);
+        boolean hasTexCoord = isFloat(sourceLayout, BGFX_ATTRIB_TEXCOORD0, 2);
+
+        long sourceAddress = memAddress(source.data());
+        int sourceStride = source.getStride();
+        var min = new Vector3f(Float.POSITIVE_INFINITY);
+        var max = new Vector3f(Float.NEGATIVE_INFINITY);
+        long positions = sourceAddress + sourceLayout.offset(BGFX_ATTRIB_POSITION);
+        for (int i = 0; i < vertexCount; i++) {
+            long address = positions + (long) i * sourceStride;
+            for (int component = 0; component < 3; component++) {
+                float value = memGetFloat(address + component * Float.BYTES);
+                min.setComponent(component, Math.min(min.get(component), value));
+                max.setComponent(component, Math.max(max.get(component), value));
+            }
+        }
+        var offset = min.add(max, new Vector3f()).mul(0.5f);
+        var scale = max.sub(min, new Vector3f()).mul(0.5f);
+        float size = 2 * Math.max(scale.x, Math.max(scale.y, scale.z));
+        // flat axes get a tiny scale, they don't divide by zero and bounds stay flat
+        float flatScale = Math.max(size, 1.0f) * 1e-6f;
+        scale.set(scale.x > 0 ? scale.x : flatScale, scale.y > 0 ? scale.y : flatScale,
+                scale.z > 0 ? scale.z : flatScale);
+
+        var positionFormat = PositionFormat.FLOAT;
+        if (positionTolerance > 0 && getPositionError(source, offset, scale) <= positionTolerance * size) {
+            positionFormat = PositionFormat.INT16;
+        }
+        TexCoordFormat texCoordFormat = null;
+        if (hasTexCoord) {
+            texCoordFormat = chooseTexCoordFormat(source, texCoordTolerance);
+        }
+        boolean compactTexCoord = texCoordFormat == TexCoordFormat.INT16 || texCoordFormat == TexCoordFormat.HALF;
+        NormalFormat normalFormat = null;
+        if (hasNormal) {
+            normalFormat = normalTolerance > 0 && getOctahedralError(source) <= normalTolerance
+                    ? NormalFormat.OCTAHEDRAL
+                    : NormalFormat.FLOAT;
+        }
+        if (positionFormat == PositionFormat.FLOAT && !compactTexCoord && normalFormat != NormalFormat.OCTAHEDRAL) {
+            statistics.add(vertexCount * sourceStride, vertexCount * sourceStride, false, false, false);
+            return source;
+        }
+
+        var layout = createLayout(positionFormat, normalFormat, hasColor, texCoordFormat);
+        var result = VertexStream.allocate(layout, vertexCount);
+        long resultAddress = memAddress(result.data());
+        int stride = result.getStride();
+        for (int i = 0; i < vertexCount; i++) {
+            long src = sourceAddress + (long) i * sourceStride;
+            long dst = resultAddress + (long) i * stride;
+
+            long srcPosition = src + sourceLayout.offset(BGFX_ATTRIB_POSITION);
+            long dstPosition = dst + layout.offset(BGFX_ATTRIB_POSITION);
+            if (positionFormat == PositionFormat.INT16) {
+                memPutShort(dstPosition, toInt16((memGetFloat(srcPosition) - offset.x) / scale.x));
+                memPutShort(dstPosition + 2, toInt16((memGetFloat(srcPosition + 4) - offset.y) / scale.y));
+                memPutShort(dstPosition + 4, toInt16((memGetFloat(srcPosition + 8) - offset.z) / scale.z));
+            } else {
+                memCopy(srcPosition, dstPosition, 3 * Float.BYTES);
+            }
+
+            if (normalFormat == NormalFormat.OCTAHEDRAL) {
+                long srcNormal = src + sourceLayout.offset(BGFX_ATTRIB_NORMAL);
+                putOctahedral(dst + layout.offset(BGFX_ATTRIB_NORMAL),
+                        memGetFloat(srcNormal), memGetFloat(srcNormal + 4), memGetFloat(srcNormal + 8));
+            } else if (normalFormat == NormalFormat.FLOAT) {
+                memCopy(src + sourceLayout.offset(BGFX_ATTRIB_NORMAL), dst + layout.offset(BGFX_ATTRIB_NORMAL),
+                        3 * Float.BYTES);
+            }
+            if (hasColor) {
+                memPutInt(dst + layout.offset(BGFX_ATTRIB_COLOR0), memGetInt(src + sourceLayout.offset(BGFX_ATTRIB_COLOR0)));
+            }
+            if (hasTexCoord) {
+                long srcTexCoord = src + sourceLayout.offset(BGFX_ATTRIB_TEXCOORD0);
+                long dstTexCoord = dst + layout.offset(BGFX_ATTRIB_TEXCOORD0);
+                float u = memGetFloat(srcTexCoord);
+                float v = memGetFloat(srcTexCoord + 4);
+                if (texCoordFormat == TexCoordFormat.INT16) {
+                    memPutShort(dstTexCoord, toInt16(u));
+                    memPutShort(dstTexCoord + 2, toInt16(v));
+                } else if (texCoordFormat == TexCoordFormat.HALF) {
+                    memPutShort(dstTexCoord, toHalf(u));
+                    memPutShort(dstTexCoord + 2, toHalf(v));
+                } else {
+                    memCopy(srcTexCoord, dstTexCoord, 2 * Float.BYTES);
+                }
+            }
+        }
+        result.fill();
+        if (positionFormat == PositionFormat.INT16) {
+            result.setDequantization(offset, scale);
+        }
+
+        statistics.add(vertexCount * sourceStride, vertexCount * stride, positionFormat == PositionFormat.INT16,
+                compactTexCoord, normalFormat == NormalFormat.OCTAHEDRAL);
+        source.free();
+        return result;
+    }
+
+    private static boolean isFloat(BGFXVertexLayout layout, int attrib, int minNum) {
+        if (!bgfx_vertex_layout_has(layout, attrib)) return false;
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            var num = stack.malloc(1);
+            var type = stack.mallocInt(1);
+            bgfx_vertex_layout_decode(layout, attrib, num, type, stack.malloc(1), stack.malloc(1));
+            return type.get(0) == BGFX_ATTRIB_TYPE_FLOAT && num.get(0) >= minNum;
+        }
+    }
+
+    private static float getPositionError(VertexStream source, Vector3f offset, Vector3f scale) {
+        long address = memAddress(source.data()) + source.getLayout().offset(BGFX_ATTRIB_POSITION);
+        float error = 0;
+        for (int i = 0; i < source.getVertexCount(); i++, address += source.getStride()) {
+            error = Math.max(error, getInt16Error(memGetFloat(address), offset.x, scale.x));
+            error = Math.max(error, getInt16Error(memGetFloat(address + 4), offset.y, scale.y));
+            error = Math.max(error, getInt16Error(memGetFloat(address + 8), offset.z, scale.z));
+        }
+        return error;
+    }
+
+    /**
+     * @return max angle in radians between normals of the stream and their octahedral encoding
+     */
+    private static float getOctahedralError(VertexStream source) {
+        var normal = new Vector3f();
+        var decoded = new Vector3f();
+        float minCos = 1;
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            long encoded = stack.nmalloc(2 * Short.BYTES);
+            long address = memAddress(source.data()) + source.getLayout().offset(BGFX_ATTRIB_NORMAL);
+            for (int i = 0; i < source.getVertexCount(); i++, address += source.getStride()) {
+                normal.set(memGetFloat(address), memGetFloat(address + 4), memGetFloat(address + 8));
+                if (normal.lengthSquared() == 0) continue;
+
+                normal.normalize();
+                putOctahedral(encoded, normal.x, normal.y, normal.z);
+                minCos = Math.min(minCos, getOctahedral(encoded, decoded).dot(normal));
+            }
+        }
+        return (float) Math.acos(Math.max(-1, Math.min(1, minCos)));
+    }
+
+    private static float getInt16Error(float value, float offset, float scale) {
+        return Math.abs(fromInt16(toInt16((value - offset) / scale)) * scale + offset - value);
+    }
+
+    /**
+     * @return most compact format meeting the tolerance, int16 is preferred for its uniform precision
+     */
+    private static TexCoordFormat chooseTexCoordFormat(VertexStream source, float tolerance) {
+        if (tolerance <= 0) return TexCoordFormat.FLOAT;
+
+        boolean fitsInt16 = true;
+        float int16Error = 0;
+        float halfError = 0;
+        long address = memAddress(source.data()) + source.getLayout().offset(BGFX_ATTRIB_TEXCOORD0);
+        for (int i = 0; i < source.getVertexCount() * 2; i++) {
+            float value = memGetFloat(address + (long) (i / 2) * source.getStride() + (i % 2) * Float.BYTES);
+            fitsInt16 &= value >= -1 && value <= 1;
+            int16Error = Math.max(int16Error, Math.abs(fromInt16(toInt16(value)) - value));
+            halfError = Math.max(halfError, Math.abs(fromHalf(toHalf(value)) - value));
+        }
+
+        if (fitsInt16 && int16Error <= tolerance) return TexCoordFormat.INT16;
+        if (isHalfSupported() && halfError <= tolerance) return TexCoordFormat.HALF;
+        return TexCoordFormat.FLOAT;
+    }
+
+    public static boolean isHalfSupported() {
+        BGFXCaps caps = bgfx_get_caps();
+        return caps != null && (caps.supported() & BGFX_CAPS_VERTEX_ATTRIB_HALF) != 0;
+    }
+
+    /**
+     * Octahedral encoding: project the unit vector onto the octahedron |x| + |y| + |z| = 1
+     * and unfold the lower half over the diagonals
+     * @param address destination of 2 x normalized int16
+     */
+    public static void putOctahedral(long address, float x, float y, float z) {
+        float length = Math.abs(x) + Math.abs(y) + Math.abs(z);
+        float u = length > 0 ? x / length : 0;
+        float v = length > 0 ? y / length : 0;
+        if (z < 0) {
+            float foldedU = (1 - Math.abs(v)) * (u >= 0 ? 1 : -1);
+            float foldedV = (1 - Math.abs(u)) * (v >= 0 ? 1 : -1);
+            u = foldedU;
+            v = foldedV;
+        }
+        memPutShort(address, toInt16(u));
+        memPutShort(address + 2, toInt16(v));
+    }
+
+    /**
+     * Decode octahedral normal written by putOctahedral
+     * @param address source of 2 x normalized int16
+     * @param dest unit vector
+     * @return dest
+     */
+    public static Vector3f getOctahedral(long address, Vector3f dest) {
+        float u = fromInt16(memGetShort(address));
+        float v = fromInt16(memGetShort(address + 2));
+        float z = 1 - Math.abs(u) - Math.abs(v);
+        if (z < 0) {
+            float unfoldedU = (1 - Math.abs(v)) * (u >= 0 ? 1 : -1);
+            float unfoldedV = (1 - Math.abs(u)) * (v >= 0 ? 1 : -1);
+            u = unfoldedU;
+            v = unfoldedV;
+        }
+        return dest.set(u, v, z).normalize();
+    }
+
+    private static short toInt16(float value) {
+        return (short) Math.round(Math.max(-1.0f, Math.min(1.0f, value)) * INT16_MAX);
+    }
+
+    /**
+     * @param value normalized int16
+     * @return value in [-1, 1]
+     */
+    public static float fromInt16(short value) {
+        return Math.max(-1.0f, value / INT16_MAX);
+    }
+
+    /**
+     * Round to nearest IEEE 754 half float, overflow gives infinity
+     */
+    static short toHalf(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = bits >>> 16 & 0x8000;
+        int exponent = (bits >>> 23 & 0xff) - 127 + 15;
+        int mantissa = bits & 0x7fffff;
+        if (exponent >= 31) {
+            return (short) (sign | 0x7c00);
+        }
+        if (exponent <= 0) {
+            if (exponent < -10) return (short) sign;
+
+            // subnormal half, shift in the implicit leading bit
+            mantissa |= 0x800000;
+            int shift = 14 - exponent;
+            int half = mantissa >> shift;
+            if ((mantissa >> (shift - 1) & 1) != 0) {
+                half++;
+            }
+            return (short) (sign | half);
+        }
+        // rounding carry propagates into the exponent
+        int half = sign | exponent << 10 | mantissa >> 13;
+        if ((mantissa & 0x1000) != 0) {
+            half++;
+        }
+        return (short) half;
+    }
+
+    static float fromHalf(short value) {
+        int bits = value & 0xffff;
+        int sign = (bits & 0x8000) << 16;
+        int exponent = bits >>> 10 & 0x1f;
+        int mantissa = bits & 0x3ff;
+        if (exponent == 0) {
+            float magnitude = Math.scalb((float) mantissa, -24);
+            return sign != 0 ? -magnitude : magnitude;
+        }
+        if (exponent == 31) {
+            return Float.intBitsToFloat(sign | 0x7f800000 | mantissa << 13);
+        }
+        return Float.intBitsToFloat(sign | (exponent + 112) << 23 | mantissa << 13);
+    }
+}
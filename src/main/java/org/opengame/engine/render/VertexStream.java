@@ -0,0 +1,195 @@
+package org.opengame.engine.render;
+
+import lombok.Getter;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+import org.lwjgl.bgfx.BGFXVertexLayout;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import static org.lwjgl.system.MemoryUtil.*;
+
+/**
+ * Interleaved vertex data packed straight into native memory with the stride of a bgfx vertex layout.
+ * Attributes are written in layout order, no per-vertex java objects are created.
+ * Attributes which are not written stay zeroed.
+ * Ownership of the buffer is passed to the mesh which is created from the stream.
+ * Quantized streams store positions normalized to [-1, 1], dequantization scales and offsets them back.
+ */
+public class VertexStream {
+    @Getter
+    private final BGFXVertexLayout layout;
+    @Getter
+    private final int vertexCount;
+    @Getter
+    private final int stride;
+    private final ByteBuffer buffer;
+    private final Vector3f dequantizeOffset = new Vector3f();
+    private final Vector3f dequantizeScale = new Vector3f(1.0f);
+    @Getter
+    private boolean quantized;
+
+    private VertexStream(BGFXVertexLayout layout, int vertexCount) {
+        this.layout = layout;
+        this.vertexCount = vertexCount;
+        this.stride = layout.stride();
+        this.buffer = memCalloc(vertexCount * stride);
+    }
+
+    /**
+     * Allocate native memory for given amount of vertices
+     * @param layout vertex layout, its stride defines vertex size
+     * @param vertexCount number of vertices
+     * @return empty stream
+     */
+    public static VertexStream allocate(BGFXVertexLayout layout, int vertexCount) {
+        return new VertexStream(layout, vertexCount);
+    }
+
+    /**
+     * Mark positions as normalized, original position is offset + normalized * scale
+     * @param offset center of the quantization box
+     * @param scale half size of the quantization box
+     * @return this stream
+     */
+    public VertexStream setDequantization(Vector3fc offset, Vector3fc scale) {
+        dequantizeOffset.set(offset);
+        dequantizeScale.set(scale);
+        quantized = true;
+        return this;
+    }
+
+    public Vector3fc getDequantizeOffset() {
+        return dequantizeOffset;
+    }
+
+    public Vector3fc getDequantizeScale() {
+        return dequantizeScale;
+    }
+
+    public VertexStream putFloat(float value) {
+        buffer.putFloat(value);
+        return this;
+    }
+
+    public VertexStream putInt(int value) {
+        buffer.putInt(value);
+        return this;
+    }
+
+    public VertexStream position(float x, float y, float z) {
+        buffer.putFloat(x).putFloat(y).putFloat(z);
+        return this;
+    }
+
+    public VertexStream texCoord(float u, float v) {
+        buffer.putFloat(u).putFloat(v);
+        return this;
+    }
+
+    public VertexStream color(int abgr) {
+        buffer.putInt(abgr);
+        return this;
+    }
+
+    /**
+     * Put whole vertices from float array, array length must be multiple of stride in floats
+     * @param data packed vertex data
+     * @return this stream
+     */
+    public VertexStream putFloats(float[] data) {
+        buffer.asFloatBuffer().put(data);
+        buffer.position(buffer.position() + data.length * Float.BYTES);
+        return this;
+    }
+
+    /**
+     * Copy whole vertices from packed data with the same layout
+     * @param data vertex data, all remaining bytes are copied
+     * @return this stream
+     */
+    public VertexStream put(ByteBuffer data) {
+        buffer.put(data);
+        return this;
+    }
+
+    /**
+     * Copy one attribute for every vertex from a tightly packed native array (e.g. assimp AIVector3D buffer)
+     * @param srcAddress address of the first element
+     * @param srcStride distance between elements in bytes
+     * @param attributeOffset offset of attribute inside the vertex
+     * @param attributeSize size of attribute in bytes
+     * @return this stream
+     */
+    public VertexStream copyAttribute(long srcAddress, int srcStride, int attributeOffset, int attributeSize) {
+        long dstAddress = memAddress0(buffer) + attributeOffset;
+        for (int i = 0; i < vertexCount; i++) {
+            memCopy(srcAddress + (long) i * srcStride, dstAddress + (long) i * stride, attributeSize);
+        }
+        return this;
+    }
+
+    /**
+     * Create stream with vertices of this stream in new order and free this stream
+     * @param order source vertex of every vertex of the new stream, vertices can repeat or be dropped
+     * @param vertexCount vertex count of the new stream
+     * @return new stream with a copy of the layout
+     */
+    public VertexStream reorder(int[] order, int vertexCount) {
+        var result = new VertexStream(BGFXVertexLayout.calloc().set(layout), vertexCount);
+        if (quantized) {
+            result.setDequantization(dequantizeOffset, dequantizeScale);
+        }
+        long srcAddress = memAddress0(buffer);
+        long dstAddress = memAddress0(result.buffer);
+        for (int i = 0; i < vertexCount; i++) {
+            memCopy(srcAddress + (long) order[i] * stride, dstAddress + (long) i * stride, stride);
+        }
+        free();
+        return result.fill();
+    }
+
+    /**
+     * Mark all vertices as written (used after attribute copies)
+     * @return this stream
+     */
+    public VertexStream fill() {
+        buffer.position(buffer.limit());
+        return this;
+    }
+
+    /**
+     * @return view of the whole vertex memory, independent of write position
+     */
+    public ByteBuffer data() {
+        return memByteBuffer(memAddress0(buffer), buffer.capacity());
+    }
+
+    /**
+     * @return float view of the vertex memory
+     */
+    public FloatBuffer asFloatBuffer() {
+        return memFloatBuffer(memAddress0(buffer), buffer.capacity() / Float.BYTES);
+    }
+
+    /**
+     * Finish writing
+     * @return buffer ready to be passed to bgfx
+     */
+    public ByteBuffer flip() {
+        if (buffer.remaining() != 0) {
+            throw new RuntimeException("ByteBuffer size and number of arguments do not match");
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Release memory of stream which was not passed to a mesh
+     */
+    public void free() {
+        memFree(buffer);
+        layout.free();
+    }
+}
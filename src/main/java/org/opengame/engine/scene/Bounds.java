@@ -0,0 +1,119 @@
+package org.opengame.engine.scene;
+
+import lombok.Getter;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4x3fc;
+import org.joml.Vector3f;
+import org.opengame.engine.render.VertexStream;
+
+import static org.lwjgl.bgfx.BGFX.BGFX_ATTRIB_POSITION;
+import static org.lwjgl.system.MemoryUtil.memAddress;
+import static org.lwjgl.system.MemoryUtil.memGetFloat;
+
+/**
+ * Axis aligned bounding box with enclosing bounding sphere
+ */
+@Getter
+public class Bounds {
+    private final Vector3f min = new Vector3f();
+    private final Vector3f max = new Vector3f();
+    private final Vector3f center = new Vector3f();
+    private float radius;
+
+    /**
+     * Bounds of float3 positions of the stream, quantized streams give their quantization box
+     * @param vertices vertex stream with float or quantized positions
+     * @return local bounds, empty stream gives zero sized bounds at the origin
+     */
+    public static Bounds of(VertexStream vertices) {
+        var bounds = new Bounds();
+        if (vertices.getVertexCount() == 0) {
+            return bounds;
+        }
+        if (vertices.isQuantized()) {
+            vertices.getDequantizeOffset().sub(vertices.getDequantizeScale(), bounds.min);
+            vertices.getDequantizeOffset().add(vertices.getDequantizeScale(), bounds.max);
+            return bounds.updateSphere();
+        }
+
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+        long address = memAddress(vertices.data()) + vertices.getLayout().offset(BGFX_ATTRIB_POSITION);
+        int stride = vertices.getStride();
+        for (int i = 0; i < vertices.getVertexCount(); i++, address += stride) {
+            float x = memGetFloat(address);
+            float y = memGetFloat(address + 4);
+            float z = memGetFloat(address + 8);
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            minZ = Math.min(minZ, z);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+            maxZ = Math.max(maxZ, z);
+        }
+        bounds.min.set(minX, minY, minZ);
+        bounds.max.set(maxX, maxY, maxZ);
+        return bounds.updateSphere();
+    }
+
+    public Bounds set(Bounds other) {
+        min.set(other.min);
+        max.set(other.max);
+        center.set(other.center);
+        radius = other.radius;
+        return this;
+    }
+
+    /**
+     * Grow to include other bounds
+     * @param other bounds
+     * @return this
+     */
+    public Bounds union(Bounds other) {
+        min.min(other.min);
+        max.max(other.max);
+        return updateSphere();
+    }
+
+    /**
+     * Transform local bounds into given bounds, box is recomputed from the transformed extents
+     * so it stays tight under rotation
+     * @param transform local to world transform
+     * @param dest destination bounds
+     * @return dest
+     */
+    public Bounds transform(Matrix4x3fc transform, Bounds dest) {
+        float cx = (min.x + max.x) * 0.5f, cy = (min.y + max.y) * 0.5f, cz = (min.z + max.z) * 0.5f;
+        float ex = (max.x - min.x) * 0.5f, ey = (max.y - min.y) * 0.5f, ez = (max.z - min.z) * 0.5f;
+
+        float wx = transform.m00() * cx + transform.m10() * cy + transform.m20() * cz + transform.m30();
+        float wy = transform.m01() * cx + transform.m11() * cy + transform.m21() * cz + transform.m31();
+        float wz = transform.m02() * cx + transform.m12() * cy + transform.m22() * cz + transform.m32();
+        float wex = Math.abs(transform.m00()) * ex + Math.abs(transform.m10()) * ey + Math.abs(transform.m20()) * ez;
+        float wey = Math.abs(transform.m01()) * ex + Math.abs(transform.m11()) * ey + Math.abs(transform.m21()) * ez;
+        float wez = Math.abs(transform.m02()) * ex + Math.abs(transform.m12()) * ey + Math.abs(transform.m22()) * ez;
+
+        dest.min.set(wx - wex, wy - wey, wz - wez);
+        dest.max.set(wx + wex, wy + wey, wz + wez);
+        return dest.updateSphere();
+    }
+
+    /**
+     * Sphere test rejects or accepts most objects, box is tested only for spheres crossing a plane
+     * @param frustum view frustum
+     * @return true if bounds can be visible
+     */
+    public boolean isVisible(FrustumIntersection frustum) {
+        var sphere = frustum.intersectSphere(center, radius);
+        if (sphere == FrustumIntersection.INSIDE) return true;
+        if (sphere != FrustumIntersection.INTERSECT) return false;
+
+        return frustum.testAab(min, max);
+    }
+
+    private Bounds updateSphere() {
+        min.add(max, center).mul(0.5f);
+        radius = center.distance(max);
+        return this;
+    }
+}
@@ -0,0 +1,518 @@
+package org.opengame.engine.scene;
+
+import lombok.Getter;
+import org.joml.FrustumIntersection;
+import org.joml.Intersectionf;
+import org.joml.Vector2f;
+import org.joml.Vector3fc;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Dynamic bounding volume hierarchy of axis aligned boxes.
+ * Leaves store boxes enlarged by a margin, small moves inside the enlarged box don't touch the tree,
+ * larger moves remove and reinsert the leaf. Insertion picks the sibling with the lowest surface area cost
+ * and tree rotations keep it balanced, so queries stay logarithmic for any insertion order.
+ * Nodes live in flat arrays indexed by node id, leaf id is the proxy id returned by insert.
+ * Not thread safe, visitors must not modify or query the tree.
+ */
+public class BoundsTree<T> {
+    private static final int NULL = -1;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final float margin;
+
+    /**
+     * minX, minY, minZ, maxX, maxY, maxZ per node
+     */
+    private float[] bounds;
+    private int[] parent;
+    private int[] child1;
+    private int[] child2;
+    /**
+     * Leaf height is 0, free node height is -1
+     */
+    private int[] height;
+    private Object[] items;
+
+    private int root = NULL;
+    private int freeList = NULL;
+    private int capacity;
+    @Getter
+    private int nodeCount;
+    @Getter
+    private int leafCount;
+
+    private int[] stack = new int[64];
+    private final Vector2f rayResult = new Vector2f();
+
+    /**
+     * Moves which left the enlarged box and reinserted the leaf
+     */
+    @Getter
+    private long reinsertCount;
+    @Getter
+    private long rotationCount;
+
+    /**
+     * Query visitor for frustum queries
+     */
+    public interface FrustumVisitor<T> {
+        /**
+         * @param item item of the leaf
+         * @param inside whole enlarged box is inside of the frustum, no further test is needed
+         */
+        void visit(T item, boolean inside);
+    }
+
+    /**
+     * @param margin enlargement of leaf boxes, larger margin means less reinserts but looser queries
+     */
+    public BoundsTree(float margin) {
+        this.margin = margin;
+        allocateArrays(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Add item to the tree
+     * @param itemBounds bounds of the item
+     * @param item item
+     * @return proxy id used to move and remove the item
+     */
+    public int insert(Bounds itemBounds, T item) {
+        int leaf = allocateNode();
+        setFatBounds(leaf, itemBounds);
+        items[leaf] = item;
+        height[leaf] = 0;
+        leafCount++;
+
+        insertLeaf(leaf);
+        return leaf;
+    }
+
+    public void remove(int proxy) {
+        checkLeaf(proxy);
+        removeLeaf(proxy);
+        freeNode(proxy);
+        leafCount--;
+    }
+
+    /**
+     * Update bounds of the item
+     * @param proxy proxy id
+     * @param itemBounds new bounds of the item
+     * @return true if the leaf was reinserted
+     */
+    public boolean move(int proxy, Bounds itemBounds) {
+        checkLeaf(proxy);
+        if (contains(proxy, itemBounds)) {
+            return false;
+        }
+
+        removeLeaf(proxy);
+        setFatBounds(proxy, itemBounds);
+        insertLeaf(proxy);
+        reinsertCount++;
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T getItem(int proxy) {
+        checkLeaf(proxy);
+        return (T) items[proxy];
+    }
+
+    /**
+     * @return height of the tree, 0 for single leaf, -1 for empty tree
+     */
+    public int getHeight() {
+        return root == NULL ? -1 : height[root];
+    }
+
+    /**
+     * Visit items which enlarged boxes intersect the frustum, subtrees completely inside
+     * are visited without further plane tests
+     * @param frustum frustum
+     * @param visitor visitor
+     */
+    @SuppressWarnings("unchecked")
+    public void query(FrustumIntersection frustum, FrustumVisitor<T> visitor) {
+        if (root == NULL) return;
+
+        // nodes of subtrees inside the frustum are pushed complemented
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int entry = stack[--top];
+            boolean inside = entry < 0;
+            int node = inside ? ~entry : entry;
+            if (!inside) {
+                int b = node * 6;
+                int result = frustum.intersectAab(bounds[b], bounds[b + 1], bounds[b + 2],
+                        bounds[b + 3], bounds[b + 4], bounds[b + 5]);
+                if (result != FrustumIntersection.INSIDE && result != FrustumIntersection.INTERSECT) {
+                    continue;
+                }
+                inside = result == FrustumIntersection.INSIDE;
+            }
+
+            if (height[node] == 0) {
+                visitor.visit((T) items[node], inside);
+            } else if (inside) {
+                top = push(top, ~child1[node], ~child2[node]);
+            } else {
+                top = push(top, child1[node], child2[node]);
+            }
+        }
+    }
+
+    /**
+     * Visit items which enlarged boxes overlap given box
+     */
+    @SuppressWarnings("unchecked")
+    public void query(Vector3fc min, Vector3fc max, Consumer<T> visitor) {
+        if (root == NULL) return;
+
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int node = stack[--top];
+            int b = node * 6;
+            if (bounds[b] > max.x() || bounds[b + 1] > max.y() || bounds[b + 2] > max.z()
+                    || bounds[b + 3] < min.x() || bounds[b + 4] < min.y() || bounds[b + 5] < min.z()) {
+                continue;
+            }
+
+            if (height[node] == 0) {
+                visitor.accept((T) items[node]);
+            } else {
+                top = push(top, child1[node], child2[node]);
+            }
+        }
+    }
+
+    /**
+     * Visit items which enlarged boxes overlap given sphere, e.g. neighbours of a point
+     */
+    @SuppressWarnings("unchecked")
+    public void querySphere(Vector3fc center, float radius, Consumer<T> visitor) {
+        if (root == NULL) return;
+
+        float radiusSquared = radius * radius;
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int node = stack[--top];
+            int b = node * 6;
+            // squared distance from sphere center to the closest point of the box
+            float dx = Math.max(Math.max(bounds[b] - center.x(), center.x() - bounds[b + 3]), 0);
+            float dy = Math.max(Math.max(bounds[b + 1] - center.y(), center.y() - bounds[b + 4]), 0);
+            float dz = Math.max(Math.max(bounds[b + 2] - center.z(), center.z() - bounds[b + 5]), 0);
+            if (dx * dx + dy * dy + dz * dz > radiusSquared) {
+                continue;
+            }
+
+            if (height[node] == 0) {
+                visitor.accept((T) items[node]);
+            } else {
+                top = push(top, child1[node], child2[node]);
+            }
+        }
+    }
+
+    /**
+     * Visit items which enlarged boxes are hit by the ray, in no particular order
+     * @param origin ray origin
+     * @param direction ray direction, not necessarily normalized
+     * @param maxDistance max distance along the ray in direction lengths
+     * @param visitor visitor
+     */
+    @SuppressWarnings("unchecked")
+    public void raycast(Vector3fc origin, Vector3fc direction, float maxDistance, Consumer<T> visitor) {
+        if (root == NULL) return;
+
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int node = stack[--top];
+            int b = node * 6;
+            if (!Intersectionf.intersectRayAab(origin.x(), origin.y(), origin.z(),
+                    direction.x(), direction.y(), direction.z(),
+                    bounds[b], bounds[b + 1], bounds[b + 2], bounds[b + 3], bounds[b + 4], bounds[b + 5], rayResult)
+                    || rayResult.x > maxDistance) {
+                continue;
+            }
+
+            if (height[node] == 0) {
+                visitor.accept((T) items[node]);
+            } else {
+                top = push(top, child1[node], child2[node]);
+            }
+        }
+    }
+
+    public String getStats() {
+        return "[leaves: " + leafCount + "; nodes: " + nodeCount + "; height: " + getHeight()
+                + "; reinserts: " + reinsertCount + "; rotations: " + rotationCount + "]";
+    }
+
+    private int push(int top, int first, int second) {
+        if (top + 2 > stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[top++] = first;
+        stack[top++] = second;
+        return top;
+    }
+
+    private void checkLeaf(int proxy) {
+        if (proxy < 0 || proxy >= capacity || height[proxy] != 0) {
+            throw new IllegalArgumentException("Invalid proxy " + proxy);
+        }
+    }
+
+    private boolean contains(int node, Bounds itemBounds) {
+        int b = node * 6;
+        var min = itemBounds.getMin();
+        var max = itemBounds.getMax();
+        return bounds[b] <= min.x && bounds[b + 1] <= min.y && bounds[b + 2] <= min.z
+                && bounds[b + 3] >= max.x && bounds[b + 4] >= max.y && bounds[b + 5] >= max.z;
+    }
+
+    private void setFatBounds(int node, Bounds itemBounds) {
+        int b = node * 6;
+        var min = itemBounds.getMin();
+        var max = itemBounds.getMax();
+        bounds[b] = min.x - margin;
+        bounds[b + 1] = min.y - margin;
+        bounds[b + 2] = min.z - margin;
+        bounds[b + 3] = max.x + margin;
+        bounds[b + 4] = max.y + margin;
+        bounds[b + 5] = max.z + margin;
+    }
+
+    private void allocateArrays(int newCapacity) {
+        bounds = bounds == null ? new float[newCapacity * 6] : Arrays.copyOf(bounds, newCapacity * 6);
+        parent = parent == null ? new int[newCapacity] : Arrays.copyOf(parent, newCapacity);
+        child1 = child1 == null ? new int[newCapacity] : Arrays.copyOf(child1, newCapacity);
+        child2 = child2 == null ? new int[newCapacity] : Arrays.copyOf(child2, newCapacity);
+        height = height == null ? new int[newCapacity] : Arrays.copyOf(height, newCapacity);
+        items = items == null ? new Object[newCapacity] : Arrays.copyOf(items, newCapacity);
+
+        // new nodes form the free list
+        for (int i = capacity; i < newCapacity; i++) {
+            parent[i] = i + 1 < newCapacity ? i + 1 : freeList;
+            height[i] = -1;
+        }
+        freeList = capacity;
+        capacity = newCapacity;
+    }
+
+    private int allocateNode() {
+        if (freeList == NULL) {
+            allocateArrays(capacity * 2);
+        }
+
+        int node = freeList;
+        freeList = parent[node];
+        parent[node] = NULL;
+        child1[node] = NULL;
+        child2[node] = NULL;
+        height[node] = 0;
+        nodeCount++;
+        return node;
+    }
+
+    private void freeNode(int node) {
+        parent[node] = freeList;
+        height[node] = -1;
+        items[node] = null;
+        freeList = node;
+        nodeCount--;
+    }
+
+    private void insertLeaf(int leaf) {
+        if (root == NULL) {
+            root = leaf;
+            parent[root] = NULL;
+            return;
+        }
+
+        // descend to the sibling with the lowest cost of the new parent plus area growth of ancestors
+        int lb = leaf * 6;
+        int index = root;
+        while (height[index] > 0) {
+            int first = child1[index];
+            int second = child2[index];
+
+            float area = area(index);
+            float combinedArea = unionArea(index, lb);
+            float cost = 2 * combinedArea;
+            float inheritanceCost = 2 * (combinedArea - area);
+
+            float cost1 = descendCost(first, lb) + inheritanceCost;
+            float cost2 = descendCost(second, lb) + inheritanceCost;
+            if (cost < cost1 && cost < cost2) {
+                break;
+            }
+            index = cost1 < cost2 ? first : second;
+        }
+
+        int sibling = index;
+        int oldParent = parent[sibling];
+        int newParent = allocateNode();
+        parent[newParent] = oldParent;
+        union(newParent, sibling, leaf);
+        height[newParent] = height[sibling] + 1;
+        child1[newParent] = sibling;
+        child2[newParent] = leaf;
+        parent[sibling] = newParent;
+        parent[leaf] = newParent;
+
+        if (oldParent == NULL) {
+            root = newParent;
+        } else if (child1[oldParent] == sibling) {
+            child1[oldParent] = newParent;
+        } else {
+            child2[oldParent] = newParent;
+        }
+
+        refitAncestors(parent[leaf]);
+    }
+
+    private void removeLeaf(int leaf) {
+        if (leaf == root) {
+            root = NULL;
+            return;
+        }
+
+        int leafParent = parent[leaf];
+        int grandParent = parent[leafParent];
+        int sibling = child1[leafParent] == leaf ? child2[leafParent] : child1[leafParent];
+
+        if (grandParent == NULL) {
+            root = sibling;
+            parent[sibling] = NULL;
+            freeNode(leafParent);
+            return;
+        }
+
+        if (child1[grandParent] == leafParent) {
+            child1[grandParent] = sibling;
+        } else {
+            child2[grandParent] = sibling;
+        }
+        parent[sibling] = grandParent;
+        freeNode(leafParent);
+
+        refitAncestors(grandParent);
+    }
+
+    private void refitAncestors(int index) {
+        while (index != NULL) {
+            index = balance(index);
+            height[index] = 1 + Math.max(height[child1[index]], height[child2[index]]);
+            union(index, child1[index], child2[index]);
+            index = parent[index];
+        }
+    }
+
+    /**
+     * Rotate the higher grandchild up if children heights differ by more than one
+     * @return index of the node now at the position of a
+     */
+    private int balance(int a) {
+        if (height[a] < 2) {
+            return a;
+        }
+
+        int b = child1[a];
+        int c = child2[a];
+        int heightDifference = height[c] - height[b];
+        if (heightDifference > 1) {
+            rotate(a, c, b, false);
+            return c;
+        }
+        if (heightDifference < -1) {
+            rotate(a, b, c, true);
+            return b;
+        }
+        return a;
+    }
+
+    /**
+     * Move child up to the position of a, a keeps the other child and the lower grandchild
+     * @param a node being rotated down
+     * @param up higher child, takes the place of a
+     * @param other other child of a
+     * @param upIsFirst up is child1 of a
+     */
+    private void rotate(int a, int up, int other, boolean upIsFirst) {
+        int f = child1[up];
+        int g = child2[up];
+
+        child1[up] = a;
+        parent[up] = parent[a];
+        parent[a] = up;
+
+        var upParent = parent[up];
+        if (upParent == NULL) {
+            root = up;
+        } else if (child1[upParent] == a) {
+            child1[upParent] = up;
+        } else {
+            child2[upParent] = up;
+        }
+
+        int higher = height[f] > height[g] ? f : g;
+        int lower = higher == f ? g : f;
+        child2[up] = higher;
+        if (upIsFirst) {
+            child1[a] = lower;
+        } else {
+            child2[a] = lower;
+        }
+        parent[lower] = a;
+
+        union(a, other, lower);
+        union(up, a, higher);
+        height[a] = 1 + Math.max(height[other], height[lower]);
+        height[up] = 1 + Math.max(height[a], height[higher]);
+        rotationCount++;
+    }
+
+    private float descendCost(int child, int lb) {
+        float unionArea = unionArea(child, lb);
+        return height[child] == 0 ? unionArea : unionArea - area(child);
+    }
+
+    private void union(int dest, int first, int second) {
+        int d = dest * 6;
+        int f = first * 6;
+        int s = second * 6;
+        for (int i = 0; i < 3; i++) {
+            bounds[d + i] = Math.min(bounds[f + i], bounds[s + i]);
+            bounds[d + 3 + i] = Math.max(bounds[f + 3 + i], bounds[s + 3 + i]);
+        }
+    }
+
+    /**
+     * Half of the surface area
+     */
+    private float area(int node) {
+        int b = node * 6;
+        float dx = bounds[b + 3] - bounds[b];
+        float dy = bounds[b + 4] - bounds[b + 1];
+        float dz = bounds[b + 5] - bounds[b + 2];
+        return dx * dy + dy * dz + dz * dx;
+    }
+
+    private float unionArea(int node, int lb) {
+        int b = node * 6;
+        float dx = Math.max(bounds[b + 3], bounds[lb + 3]) - Math.min(bounds[b], bounds[lb]);
+        float dy = Math.max(bounds[b + 4], bounds[lb + 4]) - Math.min(bounds[b + 1], bounds[lb + 1]);
+        float dz = Math.max(bounds[b + 5], bounds[lb + 5]) - Math.min(bounds[b + 2], bounds[lb + 2]);
+        return dx * dy + dy * dz + dz * dx;
+    }
+}
@@ -0,0 +1,198 @@
+package org.opengame.engine.scene;
+
+import lombok.Getter;
+import lombok.extern.java.Log;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+import org.lwjgl.bgfx.BGFXInstanceDataBuffer;
+import org.lwjgl.system.MemoryStack;
+import org.opengame.engine.asset.AssetManager;
+import org.opengame.engine.asset.AssetManager.AssetType;
+import org.opengame.engine.object.SceneObject;
+import org.opengame.engine.object.Sortable;
+import org.opengame.engine.render.RenderQueue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Objects;
+
+import static org.lwjgl.bgfx.BGFX.*;
+import static org.lwjgl.system.MemoryUtil.*;
+
+/**
+ * Many copies of one mesh drawn with a single instanced submit.
+ * Geometry and texture are shared with the source mesh, only per-instance model matrices are uploaded
+ * every frame through bgfx instance data buffer.
+ * Instances are addressed by handles, removal moves the last instance into the freed slot.
+ */
+@Log
+public class InstanceGroup extends SceneObject implements Sortable {
+    private static final int MATRIX_FLOATS = 16;
+    private static final int INSTANCE_STRIDE = MATRIX_FLOATS * Float.BYTES;
+    private static final int NO_SLOT = -1;
+
+    @Getter
+    private final Mesh mesh;
+    private final short program;
+    private final Matrix4f transform = new Matrix4f();
+
+    /**
+     * Model matrices of all instances, column major, packed without gaps
+     */
+    private float[] transforms;
+    private int[] slotToHandle;
+    private int[] handleToSlot;
+    private int[] freeHandles;
+    private int freeHandleCount;
+    private int handleCount;
+    @Getter
+    private int instanceCount;
+
+    public InstanceGroup(Mesh mesh) throws IOException {
+        this(mesh, 16);
+    }
+
+    public InstanceGroup(Mesh mesh, int initialCapacity) throws IOException {
+        this.mesh = mesh;
+
+        if ((Objects.requireNonNull(bgfx_get_caps()).supported() & BGFX_CAPS_INSTANCING) == 0) {
+            log.warning("Instancing is not supported by " + bgfx_get_renderer_name(bgfx_get_renderer_type()));
+        }
+
+        program = AssetManager.acquireProgram("vs_instanced_textured", "fs_simple_textured");
+
+        var capacity = Math.max(initialCapacity, 1);
+        transforms = new float[capacity * MATRIX_FLOATS];
+        slotToHandle = new int[capacity];
+        handleToSlot = new int[capacity];
+        freeHandles = new int[capacity];
+    }
+
+    /**
+     * Add instance
+     * @param position world position
+     * @param rotation rotation angles around x, y and z axes
+     * @return handle of the instance
+     */
+    public int addInstance(Vector3f position, Vector3f rotation) {
+        if (instanceCount == slotToHandle.length) {
+            grow();
+        }
+
+        int handle = freeHandleCount > 0 ? freeHandles[--freeHandleCount] : handleCount++;
+        int slot = instanceCount++;
+        handleToSlot[handle] = slot;
+        slotToHandle[slot] = handle;
+
+        writeTransform(slot, position, rotation);
+
+        return handle;
+    }
+
+    public void setTransform(int handle, Vector3f position, Vector3f rotation) {
+        writeTransform(getSlot(handle), position, rotation);
+    }
+
+    /**
+     * Remove instance, handle becomes invalid and can be reused by next added instance
+     * @param handle instance handle
+     */
+    public void removeInstance(int handle) {
+        int slot = getSlot(handle);
+        int lastSlot = --instanceCount;
+
+        if (slot != lastSlot) {
+            System.arraycopy(transforms, lastSlot * MATRIX_FLOATS, transforms, slot * MATRIX_FLOATS, MATRIX_FLOATS);
+            int movedHandle = slotToHandle[lastSlot];
+            slotToHandle[slot] = movedHandle;
+            handleToSlot[movedHandle] = slot;
+        }
+
+        handleToSlot[handle] = NO_SLOT;
+        freeHandles[freeHandleCount++] = handle;
+    }
+
+    private int getSlot(int handle) {
+        if (handle < 0 || handle >= handleCount || handleToSlot[handle] == NO_SLOT) {
+            throw new IllegalArgumentException("Invalid instance handle " + handle);
+        }
+        return handleToSlot[handle];
+    }
+
+    private void writeTransform(int slot, Vector3f position, Vector3f rotation) {
+        transform.translation(position)
+                .rotateXYZ(rotation)
+                .mul(mesh.getDequantization())
+                .get(transforms, slot * MATRIX_FLOATS);
+    }
+
+    private void grow() {
+        var capacity = slotToHandle.length * 2;
+        transforms = Arrays.copyOf(transforms, capacity * MATRIX_FLOATS);
+        slotToHandle = Arrays.copyOf(slotToHandle, capacity);
+        handleToSlot = Arrays.copyOf(handleToSlot, capacity);
+        freeHandles = Arrays.copyOf(freeHandles, capacity);
+    }
+
+    @Override
+    public void frame(float time, float frameTimeMs) {
+        long encoder = bgfx_encoder_begin(false);
+        submit(encoder, 0, 0);
+        bgfx_encoder_end(encoder);
+    }
+
+    /**
+     * Instances are spread over the scene, group is sorted by state only
+     */
+    @Override
+    public long getSortKey(Vector3fc eye) {
+        return RenderQueue.createKey(0, false, program, mesh.getTexture(), 0);
+    }
+
+    /**
+     * Group can be queued in several views submitted from different render threads,
+     * instance data buffer descriptor is therefore allocated per call
+     */
+    @Override
+    public void submit(long encoder, int view, int depth) {
+        int submitted = 0;
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            var instanceDataBuffer = BGFXInstanceDataBuffer.malloc(stack);
+            while (submitted < instanceCount) {
+                // transient instance memory is limited per frame, draw in several batches if it runs out
+                int batchSize = bgfx_get_avail_instance_data_buffer(instanceCount - submitted, INSTANCE_STRIDE);
+                if (batchSize == 0) {
+                    log.warning("Instance data buffer is full, " + (instanceCount - submitted) + " instances skipped");
+                    return;
+                }
+
+                bgfx_alloc_instance_data_buffer(instanceDataBuffer, batchSize, INSTANCE_STRIDE);
+                memFloatBuffer(memAddress(instanceDataBuffer.data()), batchSize * MATRIX_FLOATS)
+                        .put(transforms, submitted * MATRIX_FLOATS, batchSize * MATRIX_FLOATS);
+
+                bgfx_encoder_set_vertex_buffer(encoder, 0, mesh.getVertexBuffer(), 0, mesh.getVertexCount());
+                bgfx_encoder_set_index_buffer(encoder, mesh.getIndexBuffer(), 0, mesh.getIndexCount());
+                bgfx_encoder_set_instance_data_buffer(encoder, instanceDataBuffer, 0, batchSize);
+
+                bgfx_encoder_set_texture(encoder, 0, mesh.getTextureUniform(), mesh.getTexture(), 0xffffffff);
+
+                bgfx_encoder_set_state(encoder, BGFX_STATE_WRITE_RGB
+                        | BGFX_STATE_WRITE_A
+                        | BGFX_STATE_WRITE_Z
+                        | BGFX_STATE_DEPTH_TEST_LESS
+                        | BGFX_STATE_MSAA, 0);
+
+                bgfx_encoder_submit(encoder, view, program, depth, 0);
+                submitted += batchSize;
+            }
+        }
+    }
+
+    /**
+     * Release instancing program, shared mesh is owned and disposed by caller
+     */
+    public void dispose() {
+        AssetManager.release(AssetType.PROGRAM, program);
+    }
+}
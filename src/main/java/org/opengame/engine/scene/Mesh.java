@@ -4,87 +4,202 @@ import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.java.Log;
 import lombok.extern.log4j.Log4j2;
+import org.joml.FrustumIntersection;
 import org.joml.Matrix4x3f;
-import org.joml.Vector3f;
-import org.lwjgl.bgfx.BGFXMemory;
-import org.lwjgl.bgfx.BGFXReleaseFunctionCallback;
+import org.joml.Matrix4x3fc;
+import org.joml.Vector3fc;
 import org.lwjgl.bgfx.BGFXVertexLayout;
-import org.lwjgl.system.MemoryUtil;
 import org.opengame.engine.Engine;
+import org.opengame.engine.asset.AssetManager;
+import org.opengame.engine.asset.AssetManager.AssetType;
+import org.opengame.engine.object.Cullable;
+import org.opengame.engine.object.LodSelectable;
 import org.opengame.engine.object.SceneObject;
+import org.opengame.engine.object.Sortable;
+import org.opengame.engine.render.RenderQueue;
+import org.opengame.engine.render.VertexStream;
 
-import java.io.BufferedInputStream;
-import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.FloatBuffer;
-import java.util.Arrays;
-import java.util.Objects;
 
 import static org.lwjgl.bgfx.BGFX.*;
 import static org.lwjgl.system.MemoryUtil.*;
 
 /**
- * Base class for all meshes
+ * Base class for all meshes.
+ * Mesh can have simplified levels of detail, index ranges of one index buffer over the shared vertex buffer.
+ * Level is selected once per frame from the projected size of the bounds, a level changes only when
+ * the size crosses its threshold by the hysteresis margin, so objects near a threshold don't flicker.
  */
 @Log
-public class Mesh extends SceneObject {
-    private static final int VERTEX_SIZE = (5 * 4);
-    private static BGFXReleaseFunctionCallback releaseMemoryCb =
-            BGFXReleaseFunctionCallback.create((_ptr, _userData) -> nmemFree(_ptr));
-    private static final String TEST_TEXTURE = "test.dds";
-
-    private final ByteBuffer vertices;
-    private final ByteBuffer indices;
+public class Mesh extends SceneObject implements Sortable, Cullable, LodSelectable {
+    public static final String DEFAULT_TEXTURE = "test.dds";
+    public static final int MAX_LODS = 8;
+    /**
+     * Meshes with more vertices need 32 bit indices
+     */
+    public static final int MAX_INDEX16_VERTICES = 1 << 16;
+    /**
+     * Projected size below which the first simplified level is used, every next level halves it
+     */
+    public static final float DEFAULT_LOD_THRESHOLD = 0.5f;
+    /**
+     * Relative margin around thresholds
+     */
+    private static final float LOD_HYSTERESIS = 0.15f;
 
     @Getter
     private final int vertexCount;
+    /**
+     * Indices of the full detail level
+     */
     @Getter
     private final int indexCount;
+    /**
+     * Index buffer holds 32 bit indices
+     */
+    @Getter
+    private final boolean index32;
+    private final int[] lodFirstIndices;
+    private final int[] lodIndexCounts;
+    /**
+     * Projected size below which the level is used, indexed by level, first one is unused
+     */
+    private final float[] lodThresholds;
+    /**
+     * Level of detail used by submit
+     */
+    @Getter
+    private int lod;
 
+    @Getter
     private final short vertexBuffer;
+    @Getter
     private final short indexBuffer;
+    @Getter
     private final BGFXVertexLayout layout;
+    @Getter
     private final short program;
+    /**
+     * Program is acquired by the mesh, otherwise the default program is used
+     */
+    @Getter
+    private final boolean ownProgram;
+    @Getter
     private short texture;
+    @Getter
     private short textureUniform;
-
-    private final Matrix4x3f model = new Matrix4x3f();
-    private final FloatBuffer modelBuffer;
-
+    /**
+     * Alpha blended, drawn after opaque meshes without depth write
+     */
     @Getter
     @Setter
-    private Vector3f position;
+    private boolean translucent;
+    /**
+     * Never moves after the scene is finalized, can be merged into a static batch
+     */
     @Getter
     @Setter
-    private Vector3f rotation;
+    private boolean isStatic;
+
+    /**
+     * Position of the mesh in the transform hierarchy, e.g. child of the model transform
+     */
+    @Getter
+    private final TransformNode transform = new TransformNode();
+    /**
+     * Transform of quantized positions into mesh space, identity for float positions
+     */
+    private final Matrix4x3f dequantization = new Matrix4x3f();
+    /**
+     * Child of the mesh transform applying dequantization, the mesh transform itself for float positions
+     */
+    private final TransformNode geometryTransform;
+
+    /**
+     * Bounds of vertex positions
+     */
+    @Getter
+    private final Bounds localBounds;
+    private final Bounds worldBounds = new Bounds();
+    private int worldBoundsVersion = -1;
+    /**
+     * Resources are released, e.g. after the mesh was merged into a static batch
+     */
+    @Getter
+    private boolean disposed;
 
-    public Mesh(Object[][] vertexData, int[] indexData, String vertexShaderName,
+    public Mesh(VertexStream vertexData, int[] indexData, String vertexShaderName,
                 String fragmentShaderName, String textureFileName) throws IOException {
-        position = new Vector3f();
-        rotation = new Vector3f();
+        this(vertexData, indexData, null, vertexShaderName, fragmentShaderName, textureFileName);
+    }
 
-        layout = createVertexLayout(false, false, true);
-        vertexCount = vertexData.length;
-        vertices = memAlloc(vertexData.length * VERTEX_SIZE);
-        vertexBuffer = createVertexBuffer(vertices, layout, vertexData);
-        indexCount = indexData.length;
-        indices = memAlloc(indexData.length * 2);
-        indexBuffer = createIndexBuffer(indices, indexData);
-        texture = loadTexture(textureFileName == null ? TEST_TEXTURE : textureFileName);
-        textureUniform = bgfx_create_uniform("s_texColor", BGFX_UNIFORM_TYPE_VEC4, 1);
+    /**
+     * @param vertexData vertices shared by all levels of detail, owned by the mesh, freed if the mesh can't be created
+     * @param indexData triangles of the full detail level
+     * @param lodIndexData triangles of simplified levels, from finest to coarsest, can be null
+     */
+    public Mesh(VertexStream vertexData, int[] indexData, int[][] lodIndexData, String vertexShaderName,
+                String fragmentShaderName, String textureFileName) throws IOException {
+        transform.setChangeListener(this::moved);
 
-        if (vertexShaderName != null && fragmentShaderName != null) {
-            short vertexShader = loadShader(vertexShaderName);
-            short fragmentShader = loadShader(fragmentShaderName);
+        int lodCount = 1 + (lodIndexData == null ? 0 : lodIndexData.length);
+        if (lodCount > MAX_LODS) {
+            throw new IllegalArgumentException("Mesh can have at most " + MAX_LODS + " levels of detail");
+        }
 
-            this.program = bgfx_create_program(vertexShader, fragmentShader, true);
-        } else {
+        // resources which can fail are acquired first, a failed mesh releases everything it was given
+        ownProgram = vertexShaderName != null && fragmentShaderName != null;
+        short acquiredTexture = BGFX_INVALID_HANDLE;
+        try {
+            acquiredTexture = AssetManager.acquireTexture(textureFileName == null ? DEFAULT_TEXTURE : textureFileName);
             // default shader
-            this.program = 0;
+            program = ownProgram ? AssetManager.acquireProgram(vertexShaderName, fragmentShaderName) : 0;
+        } catch (IOException | RuntimeException e) {
+            if (acquiredTexture != BGFX_INVALID_HANDLE) {
+                AssetManager.release(AssetType.TEXTURE, acquiredTexture);
+            }
+            vertexData.free();
+            transform.dispose();
+            throw e;
         }
+        texture = acquiredTexture;
 
-        modelBuffer = MemoryUtil.memAllocFloat(16);
+        var levels = new int[lodCount][];
+        levels[0] = indexData;
+        for (int i = 1; i < lodCount; i++) {
+            levels[i] = lodIndexData[i - 1];
+        }
+        lodFirstIndices = new int[lodCount];
+        lodIndexCounts = new int[lodCount];
+        int totalIndexCount = 0;
+        for (int i = 0; i < lodCount; i++) {
+            lodFirstIndices[i] = totalIndexCount;
+            lodIndexCounts[i] = levels[i].length;
+            totalIndexCount += levels[i].length;
+        }
+        lodThresholds = new float[lodCount];
+        for (int i = 1; i < lodCount; i++) {
+            lodThresholds[i] = DEFAULT_LOD_THRESHOLD / (1 << (i - 1));
+        }
+
+        layout = vertexData.getLayout();
+        localBounds = Bounds.of(vertexData);
+        if (vertexData.isQuantized()) {
+            dequantization.translation(vertexData.getDequantizeOffset()).scale(vertexData.getDequantizeScale());
+            geometryTransform = new TransformNode()
+                    .setPosition(vertexData.getDequantizeOffset())
+                    .setScale(vertexData.getDequantizeScale());
+            geometryTransform.setParent(transform);
+        } else {
+            geometryTransform = transform;
+        }
+        vertexCount = vertexData.getVertexCount();
+        vertexBuffer = AssetManager.acquireVertexBuffer(vertexData.flip(), layout);
+        indexCount = indexData.length;
+        index32 = needsIndex32(vertexCount);
+        indexBuffer = AssetManager.acquireIndexBuffer(packIndices(concat(levels, totalIndexCount)), index32);
+        textureUniform = bgfx_create_uniform("s_texColor", BGFX_UNIFORM_TYPE_VEC4, 1);
     }
 
     /**
@@ -94,7 +209,7 @@ public class Mesh extends SceneObject {
      * @param withTexture use texture
      * @return vertex layout
      */
-    protected BGFXVertexLayout createVertexLayout(boolean withNormals, boolean withColor, boolean withTexture) {
+    public static BGFXVertexLayout createVertexLayout(boolean withNormals, boolean withColor, boolean withTexture) {
         var layout = BGFXVertexLayout.calloc();
 
         bgfx_vertex_layout_begin(layout, Engine.getRenderer());
@@ -115,146 +230,209 @@ public class Mesh extends SceneObject {
         return layout;
     }
 
-    protected short createVertexBuffer(ByteBuffer buffer, BGFXVertexLayout layout, Object[][] vertices) {
-        Arrays.stream(vertices).forEach(
-                (vertex) -> Arrays.stream(vertex).forEach(
-                        (attribute) -> {
-                    if (attribute instanceof Float) {
-                        buffer.putFloat((float) attribute);
-                    } else if (attribute instanceof Integer) {
-                        buffer.putInt((int) attribute);
-                    } else throw new RuntimeException("Invalid parameter type");
-                }));
-
-        if (buffer.remaining() != 0) throw new RuntimeException("ByteBuffer size and number of arguments do not match");
-
-        buffer.flip();
-
-        return bgfx_create_vertex_buffer(Objects.requireNonNull(bgfx_make_ref(buffer)), layout, BGFX_BUFFER_NONE);
+    /**
+     * @param vertexCount vertex count of a mesh
+     * @return true if indices of the mesh don't fit into 16 bits
+     */
+    public static boolean needsIndex32(int vertexCount) {
+        return vertexCount > MAX_INDEX16_VERTICES;
     }
 
-    protected short createIndexBuffer(ByteBuffer buffer, int[] indices) {
-        Arrays.stream(indices).forEachOrdered((index) -> buffer.putShort((short) index));
+    /**
+     * Pack indices as 16 or 32 bit values depending on vertex count of the mesh
+     */
+    protected ByteBuffer packIndices(int[] indices) {
+        var buffer = memAlloc(indices.length * (index32 ? Integer.BYTES : Short.BYTES));
+        if (index32) {
+            for (int index : indices) {
+                buffer.putInt(index);
+            }
+        } else {
+            for (int index : indices) {
+                buffer.putShort((short) index);
+            }
+        }
 
         if (buffer.remaining() != 0) throw new RuntimeException("ByteBuffer size and number of arguments do not match");
 
         buffer.flip();
 
-        return bgfx_create_index_buffer(Objects.requireNonNull(bgfx_make_ref(buffer)), BGFX_BUFFER_NONE);
+        return buffer;
     }
 
-    private short loadShader(String shaderName) throws IOException {
-        String resourcePath = Engine.getWorkingDirectory() + "shaders/";
-
-        switch (bgfx_get_renderer_type()) {
-            case BGFX_RENDERER_TYPE_DIRECT3D11:
-            case BGFX_RENDERER_TYPE_DIRECT3D12:
-                resourcePath += "dx11/";
-                break;
-            case BGFX_RENDERER_TYPE_DIRECT3D9:
-                resourcePath += "dx9/";
-                break;
-            case BGFX_RENDERER_TYPE_OPENGL:
-                resourcePath += "glsl/";
-                break;
-
-            case BGFX_RENDERER_TYPE_METAL:
-                resourcePath += "metal/";
-                break;
-            case BGFX_RENDERER_TYPE_VULKAN:
-                resourcePath += "vulkan/";
-                break;
-
-            default:
-                throw new IOException("No shaders supported for " + bgfx_get_renderer_name(bgfx_get_renderer_type())
-                        + " renderer");
+    private static int[] concat(int[][] levels, int totalIndexCount) {
+        if (levels.length == 1) {
+            return levels[0];
         }
+        var indices = new int[totalIndexCount];
+        int offset = 0;
+        for (var level : levels) {
+            System.arraycopy(level, 0, indices, offset, level.length);
+            offset += level.length;
+        }
+        return indices;
+    }
 
-        ByteBuffer shaderCode = loadResource(resourcePath + shaderName + ".bin");
-
-        return bgfx_create_shader(Objects.requireNonNull(bgfx_make_ref_release(shaderCode, releaseMemoryCb, NULL)));
+    public int getLodCount() {
+        return lodIndexCounts.length;
     }
 
-    private short loadTexture(String fileName) throws IOException {
-        var textureDirPath = Engine.getWorkingDirectory() + "textures/";
-        ByteBuffer textureData = loadResource(textureDirPath + fileName);
-        BGFXMemory textureMemory = bgfx_make_ref_release(textureData, releaseMemoryCb, NULL);
+    public int getLodIndexCount(int level) {
+        return lodIndexCounts[level];
+    }
 
-        return bgfx_create_texture(Objects.requireNonNull(textureMemory), BGFX_TEXTURE_NONE, 0, null);
+    /**
+     * @param thresholds projected size below which every simplified level is used, descending,
+     *                   one per level except the full detail one
+     */
+    public void setLodThresholds(float... thresholds) {
+        if (thresholds.length != lodThresholds.length - 1) {
+            throw new IllegalArgumentException("Mesh has " + (lodThresholds.length - 1) + " simplified levels");
+        }
+        for (int i = 1; i < thresholds.length; i++) {
+            if (thresholds[i] > thresholds[i - 1]) {
+                throw new IllegalArgumentException("Level of detail thresholds must be descending");
+            }
+        }
+        System.arraycopy(thresholds, 0, lodThresholds, 1, thresholds.length);
     }
 
-    private ByteBuffer loadResource(String resourcePath) throws IOException {
-        var file = new File(resourcePath);
+    /**
+     * @param level level of detail used until the next selection
+     */
+    public void setLod(int level) {
+        lod = Math.max(0, Math.min(lodIndexCounts.length - 1, level));
+    }
 
-        if (!file.exists()) {
-            throw new IOException("Resource not found: " + resourcePath);
+    @Override
+    public int selectLod(Vector3fc eye, float projectionScale) {
+        int lastLevel = lodIndexCounts.length - 1;
+        if (lastLevel == 0) return 0;
+
+        var bounds = getWorldBounds();
+        float distance = bounds.getCenter().distance(eye);
+        // camera inside the bounds sees the mesh at full size
+        float size = distance <= bounds.getRadius()
+                ? Float.POSITIVE_INFINITY
+                : bounds.getRadius() / distance * projectionScale;
+
+        int target = 0;
+        while (target < lastLevel && size < lodThresholds[target + 1]) {
+            target++;
+        }
+        while (lod < target && size < lodThresholds[lod + 1] * (1 - LOD_HYSTERESIS)) {
+            lod++;
         }
+        while (lod > target && size > lodThresholds[lod] * (1 + LOD_HYSTERESIS)) {
+            lod--;
+        }
+        return lod;
+    }
 
-        var url = file.toURI().toURL();
-        int resourceSize = url.openConnection().getContentLength();
+    public void setTexture(String textureName) throws IOException {
+        if (disposed) {
+            throw new IllegalStateException("Mesh is disposed");
+        }
+        var newTexture = AssetManager.acquireTexture(textureName);
+        AssetManager.release(AssetType.TEXTURE, texture);
+        texture = newTexture;
+    }
 
-        log.info("Loading resource '" + url.getFile() + "' (" + resourceSize + " bytes)");
+    public Vector3fc getPosition() {
+        return transform.getPosition();
+    }
 
-        ByteBuffer resource = memAlloc(resourceSize);
+    public void setPosition(Vector3fc position) {
+        transform.setPosition(position);
+    }
 
-        try (BufferedInputStream bis = new BufferedInputStream(url.openStream())) {
-            int b;
-            do {
-                b = bis.read();
-                if (b != -1) {
-                    resource.put((byte) b);
-                }
-            } while (b != -1);
-        }
+    public Vector3fc getRotation() {
+        return transform.getRotation();
+    }
 
-        resource.flip();
+    public void setRotation(Vector3fc rotation) {
+        transform.setRotation(rotation);
+    }
 
-        return resource;
+    /**
+     * Called on the main thread by culling and sorting, also resolves the geometry transform,
+     * so render threads submitting the mesh only read its stored matrix
+     * @return bounds in world space, recomputed only after the world transform changes
+     */
+    @Override
+    public Bounds getWorldBounds() {
+        var world = transform.getWorld();
+        geometryTransform.getWorld();
+        if (worldBoundsVersion != transform.getVersion()) {
+            localBounds.transform(world, worldBounds);
+            worldBoundsVersion = transform.getVersion();
+        }
+        return worldBounds;
     }
 
-    public void setTexture(String textureName) throws IOException {
-        bgfx_destroy_texture(texture);
-        bgfx_destroy_uniform(textureUniform);
+    @Override
+    public boolean isVisible(FrustumIntersection frustum) {
+        return getWorldBounds().isVisible(frustum);
+    }
 
-        texture = loadTexture(textureName);
-        textureUniform = bgfx_create_uniform("s_texColor", BGFX_UNIFORM_TYPE_VEC4, 1);
+    @Override
+    public long getSortKey(Vector3fc eye) {
+        return RenderQueue.createKey(0, translucent, program, texture, getWorldBounds().getCenter().distance(eye));
     }
 
     @Override
     public void frame(float time, float frameTime) {
-        bgfx_dbg_text_printf(0, 2, 0x6f, "OpenGameEngine 0.0.1-SNAPSHOT");
-        bgfx_dbg_text_printf(0, 3, 0x0f, String.format("Frame: %7.3f[ms]", frameTime));
-
         long encoder = bgfx_encoder_begin(false);
-        bgfx_encoder_set_transform(encoder,
-                model.translation(position)
-                        .rotateXYZ(rotation)
-                        .get4x4(modelBuffer));
+        submit(encoder, 0, 0);
+        bgfx_encoder_end(encoder);
+    }
+
+    @Override
+    public void submit(long encoder, int view, int depth) {
+        nbgfx_encoder_set_transform(encoder, geometryTransform.getWorldAddress(), (short) 1);
 
         bgfx_encoder_set_vertex_buffer(encoder, 0, vertexBuffer, 0, vertexCount);
-        bgfx_encoder_set_index_buffer(encoder, indexBuffer, 0, indexCount);
+        bgfx_encoder_set_index_buffer(encoder, indexBuffer, lodFirstIndices[lod], lodIndexCounts[lod]);
 
         bgfx_encoder_set_texture(encoder, 0, textureUniform, texture, 0xffffffff);
 
-        bgfx_encoder_set_state(encoder, BGFX_STATE_WRITE_RGB
-                | BGFX_STATE_WRITE_A
-                | BGFX_STATE_WRITE_Z
-                | BGFX_STATE_DEPTH_TEST_LESS
-                | BGFX_STATE_MSAA, 0);
+        bgfx_encoder_set_state(encoder, translucent
+                ? BGFX_STATE_WRITE_RGB | BGFX_STATE_WRITE_A | BGFX_STATE_DEPTH_TEST_LESS | BGFX_STATE_MSAA
+                        | BGFX_STATE_BLEND_ALPHA
+                : BGFX_STATE_WRITE_RGB | BGFX_STATE_WRITE_A | BGFX_STATE_WRITE_Z | BGFX_STATE_DEPTH_TEST_LESS
+                        | BGFX_STATE_MSAA, 0);
 
-        bgfx_encoder_submit(encoder, 0, program, 0, 0);
-        bgfx_encoder_end(encoder);
+        bgfx_encoder_submit(encoder, view, program, depth, 0);
     }
 
+    /**
+     * @return transform of vertex positions into mesh space, e.g. to be applied to instance transforms
+     */
+    public Matrix4x3fc getDequantization() {
+        return dequantization;
+    }
+
+    /**
+     * Release resources, does nothing if already disposed
+     */
     public void dispose() {
-        MemoryUtil.memFree(modelBuffer);
+        if (disposed) return;
 
-        bgfx_destroy_program(program);
-        bgfx_destroy_texture(texture);
+        disposed = true;
+        if (geometryTransform != transform) {
+            geometryTransform.dispose();
+        }
+        transform.dispose();
+
+        if (ownProgram) {
+            AssetManager.release(AssetType.PROGRAM, program);
+        }
+        AssetManager.release(AssetType.TEXTURE, texture);
         bgfx_destroy_uniform(textureUniform);
 
-        bgfx_destroy_index_buffer(indexBuffer);
-        MemoryUtil.memFree(indices);
+        AssetManager.release(AssetType.VERTEX_BUFFER, vertexBuffer);
+        AssetManager.release(AssetType.INDEX_BUFFER, indexBuffer);
+        layout.free();
     }
 
 }
@@ -0,0 +1,378 @@
+package org.opengame.engine.scene;
+
+import lombok.extern.java.Log;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+import org.lwjgl.bgfx.BGFXVertexLayout;
+import org.lwjgl.system.MemoryStack;
+import org.opengame.engine.Engine;
+import org.opengame.engine.render.VertexStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+
+import static org.lwjgl.bgfx.BGFX.*;
+import static org.lwjgl.system.MemoryUtil.*;
+
+/**
+ * Binary cache of imported meshes, lets repeated loads skip assimp.
+ * Cache file is valid for the source file content (CRC32C and CRC32 combined into 64 bit hash), import flags,
+ * import options (optimization and quantization settings) and format version,
+ * stale files are rewritten on next import. Cache files are memory mapped on load and vertex data
+ * is copied into native vertex streams with one bulk copy per mesh.
+ * <p>
+ * Format, little endian:
+ * <pre>
+ * int magic, int version, int importFlags, int importOptions, long sourceSize, long sourceHash, int meshCount
+ * mesh: string name, string vertexShader, string fragmentShader, string texture,
+ *       int attributeCount, attributeCount * (byte attrib, byte num, byte type, byte normalized, byte asInt),
+ *       byte quantized, float[3] dequantizeOffset, float[3] dequantizeScale,
+ *       int vertexCount, int stride, int indexCount, byte[vertexCount * stride] vertices, int[indexCount] indices,
+ *       int lodCount, lodCount * (int lodIndexCount, int[lodIndexCount] lodIndices)
+ * string: int byteLength (-1 for null), UTF-8 bytes
+ * </pre>
+ */
+@Log
+public class MeshCache {
+    private static final int MAGIC = 0x434d474f; // "OGMC"
+    private static final int VERSION = 4;
+    private static final String EXTENSION = ".ogm";
+
+    /**
+     * Directory of cache files, null - cache is disabled
+     */
+    private static volatile Path cacheDirectory;
+
+    public static void setCacheDirectory(String directory) {
+        cacheDirectory = directory == null ? null : Path.of(directory);
+    }
+
+    public static boolean isEnabled() {
+        return cacheDirectory != null;
+    }
+
+    /**
+     * Load meshes from cache
+     * @param modelPath source model path
+     * @param importFlags assimp import flags used for the model
+     * @param importOptions hash of other settings affecting imported meshes
+     * @return cached meshes or null if cache is disabled, missing or stale
+     */
+    public static List<MeshData> load(String modelPath, int importFlags, int importOptions) {
+        var directory = cacheDirectory;
+        if (directory == null) return null;
+
+        var cachePath = getCachePath(directory, modelPath);
+        if (!Files.isRegularFile(cachePath)) return null;
+
+        long startTime = System.nanoTime();
+        try (var channel = FileChannel.open(cachePath, StandardOpenOption.READ)) {
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            data.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (data.getInt() != MAGIC || data.getInt() != VERSION || data.getInt() != importFlags
+                    || data.getInt() != importOptions) {
+                log.info("Mesh cache of " + modelPath + " is outdated");
+                return null;
+            }
+
+            var sourceSize = data.getLong();
+            var sourceHash = data.getLong();
+            var sourcePath = Path.of(modelPath);
+            if (sourceSize != Files.size(sourcePath) || sourceHash != hashFile(sourcePath)) {
+                log.info("Mesh cache of " + modelPath + " doesn't match source file");
+                return null;
+            }
+
+            var meshCount = data.getInt();
+            var meshes = new ArrayList<MeshData>(meshCount);
+            try {
+                for (int i = 0; i < meshCount; i++) {
+                    meshes.add(readMesh(data));
+                }
+            } catch (RuntimeException e) {
+                meshes.forEach(MeshData::dispose);
+                throw e;
+            }
+
+            log.info("Loaded " + meshCount + " meshes of " + modelPath + " from cache in "
+                    + String.format("%.3f", (System.nanoTime() - startTime) / 1_000_000.0) + " ms");
+            return meshes;
+        } catch (IOException | RuntimeException e) {
+            log.warning("Can't read mesh cache " + cachePath + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Write imported meshes to cache, failures are logged and ignored
+     * @param modelPath source model path
+     * @param importFlags assimp import flags used for the model
+     * @param importOptions hash of other settings affecting imported meshes
+     * @param meshes imported meshes
+     */
+    public static void store(String modelPath, int importFlags, int importOptions, List<MeshData> meshes) {
+        var directory = cacheDirectory;
+        if (directory == null) return;
+
+        var cachePath = getCachePath(directory, modelPath);
+        ByteBuffer data = null;
+        Path tempPath = null;
+        boolean moved = false;
+        try {
+            var sourcePath = Path.of(modelPath);
+            var sourceHash = hashFile(sourcePath);
+
+            data = memAlloc(getCacheSize(meshes)).order(ByteOrder.LITTLE_ENDIAN);
+            data.putInt(MAGIC).putInt(VERSION).putInt(importFlags).putInt(importOptions)
+                    .putLong(Files.size(sourcePath))
+                    .putLong(sourceHash)
+                    .putInt(meshes.size());
+            for (var mesh : meshes) {
+                writeMesh(data, mesh);
+            }
+            data.flip();
+
+            Files.createDirectories(directory);
+            // write to temporary file first, readers never see partially written cache
+            tempPath = Files.createTempFile(directory, cachePath.getFileName().toString(), ".tmp");
+            try (var channel = FileChannel.open(tempPath, StandardOpenOption.WRITE)) {
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            }
+            replace(tempPath, cachePath);
+            moved = true;
+
+            log.info("Mesh cache written: " + cachePath);
+        } catch (IOException | RuntimeException e) {
+            log.warning("Can't write mesh cache " + cachePath + ": " + e);
+        } finally {
+            if (data != null) {
+                memFree(data);
+            }
+            if (tempPath != null && !moved) {
+                deleteTemp(tempPath);
+            }
+        }
+    }
+
+    /**
+     * Atomic replace if the file system supports it, plain replace otherwise
+     */
+    private static void replace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void deleteTemp(Path tempPath) {
+        try {
+            Files.deleteIfExists(tempPath);
+        } catch (IOException e) {
+            log.warning("Can't delete temporary mesh cache file " + tempPath + ": " + e);
+        }
+    }
+
+    private static Path getCachePath(Path directory, String modelPath) {
+        var absolutePath = Path.of(modelPath).toAbsolutePath().normalize();
+        return directory.resolve(absolutePath.getFileName() + "-"
+                + Integer.toHexString(absolutePath.toString().hashCode()) + EXTENSION);
+    }
+
+    /**
+     * Both checksums are intrinsics and fast in a cold JVM, unlike message digests which matter on startup
+     */
+    private static long hashFile(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            var content = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            var crc32c = new CRC32C();
+            crc32c.update(content.duplicate());
+            var crc32 = new CRC32();
+            crc32.update(content);
+            return crc32c.getValue() << 32 | crc32.getValue();
+        }
+    }
+
+    private static int getCacheSize(List<MeshData> meshes) {
+        long size = 4 * 4 + 8 + 8 + 4;
+        for (var mesh : meshes) {
+            size += getStringSize(mesh.getName()) + getStringSize(mesh.getVertexShaderName())
+                    + getStringSize(mesh.getFragmentShaderName()) + getStringSize(mesh.getTextureFileName());
+            size += 4 + BGFX_ATTRIB_COUNT * 5 + 1 + 6 * 4;
+            size += 4 * 3 + (long) mesh.getVertices().getVertexCount() * mesh.getVertices().getStride()
+                    + mesh.getIndices().length * 4L;
+            size += 4;
+            for (var lod : mesh.getLodIndices()) {
+                size += 4 + lod.length * 4L;
+            }
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new RuntimeException("Model is too large for mesh cache");
+        }
+        return (int) size;
+    }
+
+    private static void writeMesh(ByteBuffer data, MeshData mesh) {
+        writeString(data, mesh.getName());
+        writeString(data, mesh.getVertexShaderName());
+        writeString(data, mesh.getFragmentShaderName());
+        writeString(data, mesh.getTextureFileName());
+
+        writeLayout(data, mesh.getVertices().getLayout());
+
+        var vertices = mesh.getVertices();
+        data.put((byte) (vertices.isQuantized() ? 1 : 0));
+        writeVector(data, vertices.getDequantizeOffset());
+        writeVector(data, vertices.getDequantizeScale());
+
+        data.putInt(vertices.getVertexCount())
+                .putInt(vertices.getStride())
+                .putInt(mesh.getIndices().length);
+        data.put(vertices.data());
+        writeInts(data, mesh.getIndices());
+
+        data.putInt(mesh.getLodIndices().length);
+        for (var lod : mesh.getLodIndices()) {
+            data.putInt(lod.length);
+            writeInts(data, lod);
+        }
+    }
+
+    private static MeshData readMesh(ByteBuffer data) {
+        var name = readString(data);
+        var vertexShader = readString(data);
+        var fragmentShader = readString(data);
+        var texture = readString(data);
+
+        var layout = readLayout(data);
+        boolean quantized = data.get() != 0;
+        var dequantizeOffset = readVector(data);
+        var dequantizeScale = readVector(data);
+        var vertexCount = data.getInt();
+        var stride = data.getInt();
+        var indexCount = data.getInt();
+        if (stride != layout.stride()) {
+            layout.free();
+            throw new RuntimeException("Vertex layout stride doesn't match");
+        }
+
+        var vertexBytes = data.slice().limit(vertexCount * stride);
+        var vertices = VertexStream.allocate(layout, vertexCount).put(vertexBytes);
+        if (quantized) {
+            vertices.setDequantization(dequantizeOffset, dequantizeScale);
+        }
+        data.position(data.position() + vertexCount * stride);
+
+        var indices = readInts(data, indexCount);
+        var lodIndices = new int[data.getInt()][];
+        for (int i = 0; i < lodIndices.length; i++) {
+            lodIndices[i] = readInts(data, data.getInt());
+        }
+
+        var mesh = new MeshData(name, vertices, indices, vertexShader, fragmentShader, texture);
+        mesh.setLodIndices(lodIndices);
+        return mesh;
+    }
+
+    private static void writeVector(ByteBuffer data, Vector3fc vector) {
+        data.putFloat(vector.x()).putFloat(vector.y()).putFloat(vector.z());
+    }
+
+    private static Vector3f readVector(ByteBuffer data) {
+        return new Vector3f(data.getFloat(), data.getFloat(), data.getFloat());
+    }
+
+    private static void writeInts(ByteBuffer data, int[] values) {
+        data.asIntBuffer().put(values);
+        data.position(data.position() + values.length * 4);
+    }
+
+    private static int[] readInts(ByteBuffer data, int count) {
+        var values = new int[count];
+        data.asIntBuffer().get(values);
+        data.position(data.position() + count * 4);
+        return values;
+    }
+
+    /**
+     * Attributes are stored in offset order so the layout is rebuilt with the same offsets
+     */
+    private static void writeLayout(ByteBuffer data, BGFXVertexLayout layout) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            var num = stack.malloc(1);
+            var type = stack.mallocInt(1);
+            var normalized = stack.malloc(1);
+            var asInt = stack.malloc(1);
+
+            var attributes = new ArrayList<Integer>();
+            for (int attrib = 0; attrib < BGFX_ATTRIB_COUNT; attrib++) {
+                if (bgfx_vertex_layout_has(layout, attrib)) {
+                    attributes.add(attrib);
+                }
+            }
+            attributes.sort((a, b) -> Short.compare(layout.offset(a), layout.offset(b)));
+
+            data.putInt(attributes.size());
+            for (int attrib : attributes) {
+                bgfx_vertex_layout_decode(layout, attrib, num, type, normalized, asInt);
+                data.put((byte) attrib).put(num.get(0)).put((byte) type.get(0)).put(normalized.get(0)).put(asInt.get(0));
+            }
+        }
+    }
+
+    private static BGFXVertexLayout readLayout(ByteBuffer data) {
+        var layout = BGFXVertexLayout.calloc();
+        bgfx_vertex_layout_begin(layout, Engine.getRenderer());
+
+        var attributeCount = data.getInt();
+        for (int i = 0; i < attributeCount; i++) {
+            int attrib = data.get();
+            int num = data.get();
+            int type = data.get();
+            boolean normalized = data.get() != 0;
+            boolean asInt = data.get() != 0;
+            bgfx_vertex_layout_add(layout, attrib, num, type, normalized, asInt);
+        }
+
+        bgfx_vertex_layout_end(layout);
+        return layout;
+    }
+
+    private static int getStringSize(String value) {
+        return 4 + (value == null ? 0 : value.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    private static void writeString(ByteBuffer data, String value) {
+        if (value == null) {
+            data.putInt(-1);
+            return;
+        }
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        data.putInt(bytes.length).put(bytes);
+    }
+
+    private static String readString(ByteBuffer data) {
+        var length = data.getInt();
+        if (length < 0) return null;
+
+        var bytes = new byte[length];
+        data.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
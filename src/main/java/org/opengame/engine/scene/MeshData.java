@@ -0,0 +1,65 @@
+package org.opengame.engine.scene;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import org.opengame.engine.render.VertexStream;
+
+import java.io.IOException;
+
+/**
+ * Imported mesh which is not uploaded to GPU yet, can be created on any thread
+ */
+@RequiredArgsConstructor
+@Getter
+public class MeshData {
+    private final String name;
+    private final VertexStream vertices;
+    private final int[] indices;
+    private final String vertexShaderName;
+    private final String fragmentShaderName;
+    private final String textureFileName;
+    /**
+     * Triangles of simplified levels of detail over the same vertices, from finest to coarsest
+     */
+    @Setter
+    private int[][] lodIndices = new int[0][];
+
+    /**
+     * @return size of vertex and index data which will be uploaded
+     */
+    public long getByteSize() {
+        long indexCount = indices.length;
+        for (var lod : lodIndices) {
+            indexCount += lod.length;
+        }
+        long indexSize = Mesh.needsIndex32(vertices.getVertexCount()) ? Integer.BYTES : Short.BYTES;
+        return (long) vertices.getVertexCount() * vertices.getStride() + indexCount * indexSize;
+    }
+
+    /**
+     * @param vertices new vertices, current ones are owned by the caller
+     * @param indices triangles of the full detail level over new vertices
+     * @return mesh data with the same name, shaders, texture and levels of detail
+     */
+    public MeshData withGeometry(VertexStream vertices, int[] indices) {
+        var mesh = new MeshData(name, vertices, indices, vertexShaderName, fragmentShaderName, textureFileName);
+        mesh.setLodIndices(lodIndices);
+        return mesh;
+    }
+
+    /**
+     * Create bgfx resources, must be called on the main thread. Vertex data is owned by created mesh
+     * @return mesh
+     */
+    public Mesh createMesh() throws IOException {
+        return new Mesh(vertices, indices, lodIndices, vertexShaderName, fragmentShaderName, textureFileName);
+    }
+
+    /**
+     * Release native memory of data which is never uploaded
+     */
+    public void dispose() {
+        vertices.free();
+    }
+}
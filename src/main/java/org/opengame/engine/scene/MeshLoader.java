@@ -1,62 +1,247 @@
 package org.opengame.engine.scene;
 
 import lombok.extern.java.Log;
+import org.lwjgl.assimp.AIFace;
 import org.lwjgl.assimp.AIMesh;
+import org.lwjgl.assimp.AIPropertyStore;
 import org.lwjgl.assimp.AIScene;
+import org.lwjgl.assimp.AIVector3D;
+import org.opengame.engine.profiler.MeshImportEvent;
+import org.opengame.engine.render.VertexQuantizer;
+import org.opengame.engine.render.VertexStream;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 
-import static org.lwjgl.assimp.Assimp.aiImportFile;
+import static org.lwjgl.assimp.Assimp.AI_CONFIG_PP_SBP_REMOVE;
+import static org.lwjgl.assimp.Assimp.AI_CONFIG_PP_SLM_VERTEX_LIMIT;
+import static org.lwjgl.assimp.Assimp.aiCreatePropertyStore;
+import static org.lwjgl.assimp.Assimp.aiImportFileExWithProperties;
+import static org.lwjgl.assimp.Assimp.aiReleaseImport;
+import static org.lwjgl.assimp.Assimp.aiReleasePropertyStore;
+import static org.lwjgl.assimp.Assimp.aiSetImportPropertyInteger;
+import static org.lwjgl.assimp.Assimp.aiPrimitiveType_LINE;
+import static org.lwjgl.assimp.Assimp.aiPrimitiveType_POINT;
 import static org.lwjgl.assimp.Assimp.aiProcess_OptimizeMeshes;
+import static org.lwjgl.assimp.Assimp.aiProcess_SortByPType;
+import static org.lwjgl.assimp.Assimp.aiProcess_SplitLargeMeshes;
+import static org.lwjgl.assimp.Assimp.aiProcess_Triangulate;
+import static org.lwjgl.bgfx.BGFX.BGFX_ATTRIB_POSITION;
+import static org.lwjgl.bgfx.BGFX.BGFX_ATTRIB_TEXCOORD0;
+import static org.lwjgl.system.MemoryUtil.memGetAddress;
+import static org.lwjgl.system.MemoryUtil.memGetInt;
 
 /**
- * Load mesh
+ * Load mesh. Import pipeline: assimp triangulates faces and drops points and lines, optionally splits
+ * large meshes, then enabled {@link MeshOptimizer} stages run and levels of detail are generated
  */
 @Log
 public class MeshLoader {
+    private static final int IMPORT_FLAGS = aiProcess_Triangulate | aiProcess_SortByPType | aiProcess_OptimizeMeshes;
+
+    /**
+     * Split meshes with more than 65536 vertices into parts with 16 bit indices,
+     * otherwise such meshes use 32 bit indices
+     */
+    private static volatile boolean splitLargeMeshes = true;
+
+    public static void setSplitLargeMeshes(boolean split) {
+        splitLargeMeshes = split;
+    }
+
+    public static boolean isSplitLargeMeshes() {
+        return splitLargeMeshes;
+    }
+
+    /**
+     * Optimization stages run on imported meshes
+     */
+    private static volatile Set<MeshOptimizer.Stage> optimizationStages =
+            Collections.unmodifiableSet(EnumSet.allOf(MeshOptimizer.Stage.class));
+
+    public static void setOptimizationStages(Set<MeshOptimizer.Stage> stages) {
+        var copy = EnumSet.noneOf(MeshOptimizer.Stage.class);
+        copy.addAll(stages);
+        optimizationStages = Collections.unmodifiableSet(copy);
+    }
+
+    public static Set<MeshOptimizer.Stage> getOptimizationStages() {
+        return optimizationStages;
+    }
+
+    /**
+     * Max quantized position error relative to mesh size, 0 - float positions
+     */
+    private static volatile float positionTolerance = 1e-4f;
+    /**
+     * Max quantized texture coordinate error, 0 - float texture coordinates
+     */
+    private static volatile float texCoordTolerance = 1.0f / 8192;
+    /**
+     * Max angular error of octahedral normals in radians, 0 - float normals
+     */
+    private static volatile float normalTolerance;
+
+    /**
+     * @param position max position error relative to mesh size, 0 - float positions
+     * @param texCoord max texture coordinate error, 0 - float texture coordinates
+     * @param normal max angular error of octahedral normals in radians, 0 - float normals,
+     *               only for shaders decoding octahedral normals
+     */
+    public static void setQuantizationTolerances(float position, float texCoord, float normal) {
+        positionTolerance = position;
+        texCoordTolerance = texCoord;
+        normalTolerance = normal;
+    }
+
     public static Model loadModel(String modelPath) throws IOException {
-        AIScene scene = aiImportFile(modelPath, aiProcess_OptimizeMeshes);
+        var meshes = new ArrayList<Mesh>();
+        for (var meshData : importModel(modelPath)) {
+            meshes.add(meshData.createMesh());
+        }
+
+        return new Model(meshes);
+    }
+
+    /**
+     * Import model into CPU memory without touching GPU, safe to call from loader threads
+     * @param modelPath path to model file
+     * @return imported meshes
+     */
+    public static List<MeshData> importModel(String modelPath) {
+        var event = new MeshImportEvent();
+        event.begin();
+
+        // cache is valid only for the same flags and options, changing them invalidates cached meshes
+        int importFlags = splitLargeMeshes ? IMPORT_FLAGS | aiProcess_SplitLargeMeshes : IMPORT_FLAGS;
+        var stages = optimizationStages;
+        // enum hash codes differ between runs, stages are hashed as a bit mask
+        int stageMask = 0;
+        for (var stage : stages) {
+            stageMask |= 1 << stage.ordinal();
+        }
+        float positionTolerance = MeshLoader.positionTolerance;
+        float texCoordTolerance = MeshLoader.texCoordTolerance;
+        float normalTolerance = MeshLoader.normalTolerance;
+        int importOptions = Objects.hash(stageMask, positionTolerance, texCoordTolerance, normalTolerance,
+                VertexQuantizer.isHalfSupported());
+        var cachedMeshes = MeshCache.load(modelPath, importFlags, importOptions);
+        if (cachedMeshes != null) {
+            commitImportEvent(event, modelPath, true, cachedMeshes);
+            return cachedMeshes;
+        }
+
+        AIScene scene = importScene(modelPath, importFlags);
 
         if (scene == null) {
             throw new RuntimeException("Model " + modelPath + " is not loaded!");
         }
 
-        log.info("Scene loaded");
-        log.info("Name: " + scene.mName().dataString());
-        log.info("Mesh count: " + scene.mNumMeshes());
+        try {
+            log.info("Scene loaded");
+            log.info("Name: " + scene.mName().dataString());
+            log.info("Mesh count: " + scene.mNumMeshes());
 
-        var meshesBuffer = scene.mMeshes();
-        var meshes = new ArrayList<Mesh>();
-        for (int i = 0; i < scene.mNumMeshes(); i++) {
-            meshes.add(createMesh(AIMesh.create(meshesBuffer.get(i))));
+            var meshesBuffer = scene.mMeshes();
+            var meshes = new ArrayList<MeshData>();
+            var statistics = new MeshOptimizer.Statistics();
+            var quantizationStatistics = new VertexQuantizer.Statistics();
+            for (int i = 0; i < scene.mNumMeshes(); i++) {
+                var meshData = MeshOptimizer.optimize(createMeshData(AIMesh.create(meshesBuffer.get(i))),
+                        stages, statistics);
+                meshData.setLodIndices(MeshSimplifier.generateLods(meshData.getVertices(), meshData.getIndices()));
+                MeshOptimizer.optimizeLods(meshData, stages);
+                // quantization is the last step, earlier ones read float positions
+                meshData = meshData.withGeometry(VertexQuantizer.quantize(meshData.getVertices(), positionTolerance,
+                        texCoordTolerance, normalTolerance, quantizationStatistics), meshData.getIndices());
+                meshes.add(meshData);
+            }
+            if (!stages.isEmpty()) {
+                log.info("Mesh optimization of " + modelPath + ": " + statistics);
+            }
+            log.info("Vertex quantization of " + modelPath + ": " + quantizationStatistics);
+
+            MeshCache.store(modelPath, importFlags, importOptions, meshes);
+            commitImportEvent(event, modelPath, false, meshes);
+            return meshes;
+        } finally {
+            aiReleaseImport(scene);
         }
+    }
 
-        return new Model(meshes);
+    private static AIScene importScene(String modelPath, int importFlags) {
+        AIPropertyStore properties = aiCreatePropertyStore();
+        if (properties == null) {
+            throw new RuntimeException("Can't create assimp property store");
+        }
+        try {
+            aiSetImportPropertyInteger(properties, AI_CONFIG_PP_SLM_VERTEX_LIMIT, Mesh.MAX_INDEX16_VERTICES);
+            aiSetImportPropertyInteger(properties, AI_CONFIG_PP_SBP_REMOVE, aiPrimitiveType_POINT | aiPrimitiveType_LINE);
+            return aiImportFileExWithProperties(modelPath, importFlags, null, properties);
+        } finally {
+            aiReleasePropertyStore(properties);
+        }
+    }
+
+    private static void commitImportEvent(MeshImportEvent event, String modelPath, boolean cached,
+                                          List<MeshData> meshes) {
+        if (!event.shouldCommit()) return;
+
+        long vertices = 0;
+        long indices = 0;
+        long bytes = 0;
+        for (var mesh : meshes) {
+            vertices += mesh.getVertices().getVertexCount();
+            indices += mesh.getIndices().length;
+            bytes += mesh.getByteSize();
+        }
+        event.setPath(modelPath);
+        event.setCached(cached);
+        event.setMeshes(meshes.size());
+        event.setVertices(vertices);
+        event.setIndices(indices);
+        event.setBytes(bytes);
+        event.commit();
     }
 
-    private static Mesh createMesh(AIMesh aiMesh) throws IOException {
+    private static MeshData createMeshData(AIMesh aiMesh) {
         var vertices = aiMesh.mVertices();
         var texCoords = aiMesh.mTextureCoords(0);
 
-        assert texCoords != null;
+        var layout = Mesh.createVertexLayout(false, false, true);
+        var positionOffset = layout.offset(BGFX_ATTRIB_POSITION);
+        var texCoordOffset = layout.offset(BGFX_ATTRIB_TEXCOORD0);
 
-        var meshVertices = new Object[aiMesh.mNumVertices()][5];
-        for (int i = 0; i < meshVertices.length; i++) {
-            var vert = vertices.get(i);
-            meshVertices[i] = new Object[]{ vert.x(), vert.y(), vert.z(), texCoords.get(i).x(), texCoords.get(i).y()};
+        // AIVector3D is three tightly packed floats, take xyz for position and xy for uv
+        var vertexStream = VertexStream.allocate(layout, aiMesh.mNumVertices())
+                .copyAttribute(vertices.address(), AIVector3D.SIZEOF, positionOffset, 3 * Float.BYTES);
+        if (texCoords != null) {
+            vertexStream.copyAttribute(texCoords.address(), AIVector3D.SIZEOF, texCoordOffset, 2 * Float.BYTES);
         }
+        vertexStream.fill();
+
+        // faces are triangulated, degenerate points and lines left by triangulation are skipped
+        var faceCount = aiMesh.mNumFaces();
+        var facesAddress = aiMesh.mFaces().address();
+        var meshIndices = new int[faceCount * 3];
+        int indexCount = 0;
+        for (int i = 0; i < faceCount; i++) {
+            var faceAddress = facesAddress + (long) i * AIFace.SIZEOF;
+            if (memGetInt(faceAddress + AIFace.MNUMINDICES) != 3) continue;
 
-        var faces = aiMesh.mFaces();
-        var meshIndices = new int[aiMesh.mNumFaces() * 3];
-        for (int i = 0; i < aiMesh.mNumFaces(); i++) {
-            var face = faces.get(i);
-            meshIndices[i * 3] = face.mIndices().get(0);
-            meshIndices[i * 3 + 1] = face.mIndices().get(1);
-            meshIndices[i * 3 + 2] = face.mIndices().get(2);
+            var indicesAddress = memGetAddress(faceAddress + AIFace.MINDICES);
+            meshIndices[indexCount++] = memGetInt(indicesAddress);
+            meshIndices[indexCount++] = memGetInt(indicesAddress + 4);
+            meshIndices[indexCount++] = memGetInt(indicesAddress + 8);
         }
 
-        return new Mesh(meshVertices, meshIndices,
-                "vs_simple_textured", "fs_simple_textured", null);
+        return new MeshData(aiMesh.mName().dataString(), vertexStream, Arrays.copyOf(meshIndices, indexCount),
+                "vs_simple_textured", "fs_simple_textured", Mesh.DEFAULT_TEXTURE);
     }
 }
@@ -0,0 +1,434 @@
+package org.opengame.engine.scene;
+
+import org.opengame.engine.render.VertexStream;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import static org.lwjgl.system.MemoryUtil.memAddress;
+import static org.lwjgl.system.MemoryUtil.memGetByte;
+import static org.lwjgl.system.MemoryUtil.memGetInt;
+
+/**
+ * Import time optimization of indexed triangle meshes for vertex processing on GPU.
+ * Enabled stages run in declaration order. Every stage is measured with vertex count and ACMR
+ * (average post-transform cache misses per triangle, 0.5 - 3.0, lower is better) of a simulated FIFO cache.
+ */
+public final class MeshOptimizer {
+    /**
+     * Post-transform cache size assumed by optimization and ACMR
+     */
+    public static final int CACHE_SIZE = 16;
+    /**
+     * Overdraw order is dropped if it makes ACMR worse by more than this ratio
+     */
+    private static final float OVERDRAW_ACMR_THRESHOLD = 1.05f;
+
+    public enum Stage {
+        /**
+         * Merge vertices with identical attributes
+         */
+        DEDUPLICATE,
+        /**
+         * Reorder triangles to reuse transformed vertices (Tipsify, Sander et al. 2007)
+         */
+        VERTEX_CACHE,
+        /**
+         * Reorder clusters of triangles so outward facing ones are drawn first and occlude the rest
+         */
+        OVERDRAW,
+        /**
+         * Reorder vertices by first use so vertex fetch reads memory sequentially, drops unused vertices
+         */
+        VERTEX_FETCH
+    }
+
+    /**
+     * Vertex counts and cache misses of optimized meshes before and after every stage, summed over meshes
+     */
+    public static final class Statistics {
+        private final long[] triangles = new long[Stage.values().length];
+        private final long[] verticesBefore = new long[Stage.values().length];
+        private final long[] verticesAfter = new long[Stage.values().length];
+        private final long[] missesBefore = new long[Stage.values().length];
+        private final long[] missesAfter = new long[Stage.values().length];
+
+        private synchronized void add(Stage stage, int triangleCount, int vertexCountBefore, int vertexCountAfter,
+                                      int cacheMissesBefore, int cacheMissesAfter) {
+            int i = stage.ordinal();
+            triangles[i] += triangleCount;
+            verticesBefore[i] += vertexCountBefore;
+            verticesAfter[i] += vertexCountAfter;
+            missesBefore[i] += cacheMissesBefore;
+            missesAfter[i] += cacheMissesAfter;
+        }
+
+        public synchronized long getVerticesBefore(Stage stage) {
+            return verticesBefore[stage.ordinal()];
+        }
+
+        public synchronized long getVerticesAfter(Stage stage) {
+            return verticesAfter[stage.ordinal()];
+        }
+
+        public synchronized float getAcmrBefore(Stage stage) {
+            return acmr(missesBefore[stage.ordinal()], triangles[stage.ordinal()]);
+        }
+
+        public synchronized float getAcmrAfter(Stage stage) {
+            return acmr(missesAfter[stage.ordinal()], triangles[stage.ordinal()]);
+        }
+
+        private static float acmr(long misses, long triangleCount) {
+            return triangleCount == 0 ? 0 : (float) misses / triangleCount;
+        }
+
+        @Override
+        public synchronized String toString() {
+            var builder = new StringBuilder("[");
+            for (var stage : Stage.values()) {
+                if (triangles[stage.ordinal()] == 0) continue;
+
+                if (builder.length() > 1) {
+                    builder.append("; ");
+                }
+                builder.append(stage.name().toLowerCase())
+                        .append(": vertices ").append(getVerticesBefore(stage))
+                        .append(" -> ").append(getVerticesAfter(stage))
+                        .append(", ACMR ").append(String.format("%.3f", getAcmrBefore(stage)))
+                        .append(" -> ").append(String.format("%.3f", getAcmrAfter(stage)));
+            }
+            return builder.append("]").toString();
+        }
+    }
+
+    private MeshOptimizer() {
+    }
+
+    /**
+     * Run enabled stages over full detail triangles of the mesh
+     * @param mesh imported mesh, its vertex stream is freed if it is replaced
+     * @param stages enabled stages
+     * @param statistics receives measurements of every stage
+     * @return optimized mesh
+     */
+    public static MeshData optimize(MeshData mesh, Set<Stage> stages, Statistics statistics) {
+        var vertices = mesh.getVertices();
+        var indices = mesh.getIndices().clone();
+        for (var stage : Stage.values()) {
+            if (!stages.contains(stage)) continue;
+
+            int vertexCountBefore = vertices.getVertexCount();
+            int missesBefore = countCacheMisses(indices, vertexCountBefore);
+            switch (stage) {
+                case DEDUPLICATE:
+                    vertices = deduplicate(vertices, indices);
+                    break;
+                case VERTEX_CACHE:
+                    indices = optimizeVertexCache(indices, vertices.getVertexCount());
+                    break;
+                case OVERDRAW:
+                    indices = optimizeOverdraw(indices, MeshSimplifier.readPositions(vertices));
+                    break;
+                case VERTEX_FETCH:
+                    vertices = optimizeVertexFetch(vertices, indices);
+                    break;
+            }
+            statistics.add(stage, indices.length / 3, vertexCountBefore, vertices.getVertexCount(),
+                    missesBefore, countCacheMisses(indices, vertices.getVertexCount()));
+        }
+
+        return mesh.withGeometry(vertices, indices);
+    }
+
+    /**
+     * Reorder triangles of every level of detail for the vertex cache if the stage is enabled
+     */
+    public static void optimizeLods(MeshData mesh, Set<Stage> stages) {
+        if (!stages.contains(Stage.VERTEX_CACHE)) return;
+
+        var lods = mesh.getLodIndices();
+        for (int i = 0; i < lods.length; i++) {
+            lods[i] = optimizeVertexCache(lods[i], mesh.getVertices().getVertexCount());
+        }
+    }
+
+    /**
+     * @param indices triangle list
+     * @param vertexCount vertex count
+     * @return average cache misses per triangle of FIFO cache of {@link #CACHE_SIZE} vertices
+     */
+    public static float computeAcmr(int[] indices, int vertexCount) {
+        return indices.length < 3 ? 0 : (float) countCacheMisses(indices, vertexCount) / (indices.length / 3);
+    }
+
+    private static int countCacheMisses(int[] indices, int vertexCount) {
+        int misses = 0;
+        for (byte triangleMisses : simulateCache(indices, vertexCount)) {
+            misses += triangleMisses;
+        }
+        return misses;
+    }
+
+    /**
+     * @return cache misses of every triangle
+     */
+    private static byte[] simulateCache(int[] indices, int vertexCount) {
+        var misses = new byte[indices.length / 3];
+        // vertex is cached while fewer than cache size misses happened since it was added
+        var addedAt = new int[vertexCount];
+        Arrays.fill(addedAt, -CACHE_SIZE);
+        int time = 0;
+        for (int i = 0; i < misses.length * 3; i++) {
+            int vertex = indices[i];
+            if (time - addedAt[vertex] >= CACHE_SIZE) {
+                addedAt[vertex] = time++;
+                misses[i / 3]++;
+            }
+        }
+        return misses;
+    }
+
+    /**
+     * Merge vertices with identical bytes, indices are remapped in place
+     */
+    private static VertexStream deduplicate(VertexStream vertices, int[] indices) {
+        int vertexCount = vertices.getVertexCount();
+        int stride = vertices.getStride();
+        long address = memAddress(vertices.data());
+
+        var table = new int[Integer.highestOneBit(Math.max(1, vertexCount) * 2 - 1) << 1];
+        Arrays.fill(table, -1);
+        int mask = table.length - 1;
+        var remap = new int[vertexCount];
+        var order = new int[vertexCount];
+        int uniqueCount = 0;
+        for (int i = 0; i < vertexCount; i++) {
+            long vertex = address + (long) i * stride;
+            int slot = hashVertex(vertex, stride) & mask;
+            while (table[slot] != -1 && !equalVertices(address + (long) order[table[slot]] * stride, vertex, stride)) {
+                slot = (slot + 1) & mask;
+            }
+            if (table[slot] == -1) {
+                table[slot] = uniqueCount;
+                order[uniqueCount++] = i;
+            }
+            remap[i] = table[slot];
+        }
+
+        if (uniqueCount == vertexCount) return vertices;
+
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = remap[indices[i]];
+        }
+        return vertices.reorder(order, uniqueCount);
+    }
+
+    private static int hashVertex(long vertex, int stride) {
+        int hash = 0;
+        int i = 0;
+        for (; i + Integer.BYTES <= stride; i += Integer.BYTES) {
+            hash = hash * 31 + memGetInt(vertex + i);
+        }
+        for (; i < stride; i++) {
+            hash = hash * 31 + memGetByte(vertex + i);
+        }
+        return hash * 0x9e3779b9 >>> 8;
+    }
+
+    private static boolean equalVertices(long a, long b, int stride) {
+        int i = 0;
+        for (; i + Integer.BYTES <= stride; i += Integer.BYTES) {
+            if (memGetInt(a + i) != memGetInt(b + i)) return false;
+        }
+        for (; i < stride; i++) {
+            if (memGetByte(a + i) != memGetByte(b + i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Tipsify: emit all remaining triangles around a fanning vertex, then continue with a recently used vertex
+     * which still has triangles and stays in cache while they are emitted
+     */
+    private static int[] optimizeVertexCache(int[] indices, int vertexCount) {
+        var liveCounts = new int[vertexCount];
+        for (int index : indices) {
+            liveCounts[index]++;
+        }
+        var offsets = new int[vertexCount + 1];
+        for (int i = 0; i < vertexCount; i++) {
+            offsets[i + 1] = offsets[i] + liveCounts[i];
+        }
+        var adjacency = new int[indices.length];
+        var fill = Arrays.copyOf(offsets, vertexCount);
+        for (int i = 0; i < indices.length; i++) {
+            adjacency[fill[indices[i]]++] = i / 3;
+        }
+
+        var cacheTimes = new int[vertexCount];
+        var emitted = new boolean[indices.length / 3];
+        var deadEnd = new int[indices.length];
+        int deadEndSize = 0;
+        var result = new int[indices.length];
+        int size = 0;
+        int time = CACHE_SIZE + 1;
+        int cursor = 0;
+        int fanning = indices.length > 0 ? indices[0] : -1;
+        while (fanning >= 0) {
+            int candidates = deadEndSize;
+            for (int i = offsets[fanning]; i < offsets[fanning + 1]; i++) {
+                int triangle = adjacency[i];
+                if (emitted[triangle]) continue;
+
+                emitted[triangle] = true;
+                for (int k = 0; k < 3; k++) {
+                    int vertex = indices[triangle * 3 + k];
+                    result[size++] = vertex;
+                    deadEnd[deadEndSize++] = vertex;
+                    liveCounts[vertex]--;
+                    if (time - cacheTimes[vertex] > CACHE_SIZE) {
+                        cacheTimes[vertex] = time++;
+                    }
+                }
+            }
+
+            // prefer the oldest candidate which is still cached after emitting its triangles
+            int next = -1;
+            int bestPriority = -1;
+            for (int i = candidates; i < deadEndSize; i++) {
+                int vertex = deadEnd[i];
+                if (liveCounts[vertex] == 0) continue;
+
+                int priority = 0;
+                if (time - cacheTimes[vertex] + 2 * liveCounts[vertex] <= CACHE_SIZE) {
+                    priority = time - cacheTimes[vertex];
+                }
+                if (priority > bestPriority) {
+                    bestPriority = priority;
+                    next = vertex;
+                }
+            }
+            // dead end, take the most recently used vertex with triangles or the next one in input order
+            while (next == -1 && deadEndSize > 0) {
+                int vertex = deadEnd[--deadEndSize];
+                if (liveCounts[vertex] > 0) {
+                    next = vertex;
+                }
+            }
+            while (next == -1 && cursor < vertexCount) {
+                if (liveCounts[cursor] > 0) {
+                    next = cursor;
+                }
+                cursor++;
+            }
+            fanning = next;
+        }
+        return result;
+    }
+
+    /**
+     * Split triangles into clusters at hard cache misses (all three vertices missed) and sort clusters
+     * by how much they face away from the mesh center (Sander et al. 2007, fast linear clustering)
+     */
+    private static int[] optimizeOverdraw(int[] indices, float[] positions) {
+        int triangleCount = indices.length / 3;
+        var misses = simulateCache(indices, positions.length / 3);
+        var clusterStarts = new int[triangleCount + 1];
+        int clusterCount = 0;
+        for (int i = 0; i < triangleCount; i++) {
+            if (i == 0 || misses[i] == 3) {
+                clusterStarts[clusterCount++] = i;
+            }
+        }
+        clusterStarts[clusterCount] = triangleCount;
+        if (clusterCount < 2) return indices;
+
+        // area weighted centroids and normals, cross product length is twice the area
+        var clusterData = new float[clusterCount * 7];
+        float meshX = 0, meshY = 0, meshZ = 0, meshArea = 0;
+        for (int cluster = 0; cluster < clusterCount; cluster++) {
+            int data = cluster * 7;
+            for (int i = clusterStarts[cluster]; i < clusterStarts[cluster + 1]; i++) {
+                int a = indices[i * 3] * 3;
+                int b = indices[i * 3 + 1] * 3;
+                int c = indices[i * 3 + 2] * 3;
+                float e1x = positions[b] - positions[a], e1y = positions[b + 1] - positions[a + 1];
+                float e1z = positions[b + 2] - positions[a + 2];
+                float e2x = positions[c] - positions[a], e2y = positions[c + 1] - positions[a + 1];
+                float e2z = positions[c + 2] - positions[a + 2];
+                float nx = e1y * e2z - e1z * e2y;
+                float ny = e1z * e2x - e1x * e2z;
+                float nz = e1x * e2y - e1y * e2x;
+                float area = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+
+                clusterData[data] += (positions[a] + positions[b] + positions[c]) / 3 * area;
+                clusterData[data + 1] += (positions[a + 1] + positions[b + 1] + positions[c + 1]) / 3 * area;
+                clusterData[data + 2] += (positions[a + 2] + positions[b + 2] + positions[c + 2]) / 3 * area;
+                clusterData[data + 3] += nx;
+                clusterData[data + 4] += ny;
+                clusterData[data + 5] += nz;
+                clusterData[data + 6] += area;
+            }
+            meshX += clusterData[data];
+            meshY += clusterData[data + 1];
+            meshZ += clusterData[data + 2];
+            meshArea += clusterData[data + 6];
+        }
+        if (meshArea == 0) return indices;
+
+        meshX /= meshArea;
+        meshY /= meshArea;
+        meshZ /= meshArea;
+        var sortKeys = new float[clusterCount];
+        var order = new Integer[clusterCount];
+        for (int cluster = 0; cluster < clusterCount; cluster++) {
+            int data = cluster * 7;
+            float area = Math.max(clusterData[data + 6], Float.MIN_NORMAL);
+            float normalLength = (float) Math.sqrt(clusterData[data + 3] * clusterData[data + 3]
+                    + clusterData[data + 4] * clusterData[data + 4] + clusterData[data + 5] * clusterData[data + 5]);
+            if (normalLength > 0) {
+                sortKeys[cluster] = ((clusterData[data] / area - meshX) * clusterData[data + 3]
+                        + (clusterData[data + 1] / area - meshY) * clusterData[data + 4]
+                        + (clusterData[data + 2] / area - meshZ) * clusterData[data + 5]) / normalLength;
+            }
+            order[cluster] = cluster;
+        }
+        Arrays.sort(order, (a, b) -> Float.compare(sortKeys[b], sortKeys[a]));
+
+        var result = new int[indices.length];
+        int size = 0;
+        for (int cluster : order) {
+            int from = clusterStarts[cluster] * 3;
+            int length = clusterStarts[cluster + 1] * 3 - from;
+            System.arraycopy(indices, from, result, size, length);
+            size += length;
+        }
+
+        int vertexCount = positions.length / 3;
+        if (countCacheMisses(result, vertexCount) > countCacheMisses(indices, vertexCount) * OVERDRAW_ACMR_THRESHOLD) {
+            return indices;
+        }
+        return result;
+    }
+
+    /**
+     * Number vertices in order of first use, indices are remapped in place
+     */
+    private static VertexStream optimizeVertexFetch(VertexStream vertices, int[] indices) {
+        int vertexCount = vertices.getVertexCount();
+        var remap = new int[vertexCount];
+        Arrays.fill(remap, -1);
+        var order = new int[vertexCount];
+        int usedCount = 0;
+        for (int i = 0; i < indices.length; i++) {
+            int vertex = indices[i];
+            if (remap[vertex] == -1) {
+                remap[vertex] = usedCount;
+                order[usedCount++] = vertex;
+            }
+            indices[i] = remap[vertex];
+        }
+        return vertices.reorder(order, usedCount);
+    }
+}
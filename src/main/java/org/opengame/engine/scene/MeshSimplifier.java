@@ -0,0 +1,299 @@
+package org.opengame.engine.scene;
+
+import org.opengame.engine.render.VertexStream;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.lwjgl.bgfx.BGFX.BGFX_ATTRIB_POSITION;
+import static org.lwjgl.system.MemoryUtil.memAddress;
+import static org.lwjgl.system.MemoryUtil.memGetFloat;
+
+/**
+ * Generates levels of detail of a mesh at import time by vertex clustering.
+ * Vertices are snapped to a uniform grid, every cell keeps the vertex nearest to the mean of its vertices
+ * and triangles collapsed by the snapping are dropped. Vertices sharing a position (split by normals or uvs)
+ * are clustered once. Simplified levels only produce new index lists,
+ * all levels share the vertex buffer of the full detail mesh.
+ */
+public final class MeshSimplifier {
+    /**
+     * Triangle count of a level relative to the previous one
+     */
+    private static final float LOD_RATIO = 0.5f;
+    /**
+     * Level reducing less than this fraction of triangles is not worth its index memory
+     */
+    private static final float MIN_REDUCTION = 0.2f;
+    /**
+     * Meshes with fewer triangles are always drawn in full detail
+     */
+    private static final int MIN_LOD_TRIANGLES = 64;
+    /**
+     * Grid cells along the longest axis, limited by 21 bits per axis in cell key
+     */
+    private static final int MAX_GRID_SIZE = 1 << 12;
+    /**
+     * Grid size search stops when the range is narrower than this fraction of the grid size
+     */
+    private static final int GRID_SEARCH_PRECISION = 32;
+
+    private MeshSimplifier() {
+    }
+
+    /**
+     * @param vertices vertex stream with float3 positions
+     * @param indices triangle list of the full detail level
+     * @return index lists of simplified levels, each about half of the previous one, can be empty
+     */
+    public static int[][] generateLods(VertexStream vertices, int[] indices) {
+        var lods = new ArrayList<int[]>();
+        var clustering = new Clustering(readPositions(vertices));
+        int triangles = indices.length / 3;
+        while (lods.size() + 1 < Mesh.MAX_LODS) {
+            int target = (int) (triangles * LOD_RATIO);
+            if (target < MIN_LOD_TRIANGLES) break;
+
+            // simplified from the full level, errors of coarser grids don't accumulate
+            var lod = simplify(clustering, indices, target);
+            if (lod.length / 3 > triangles * (1 - MIN_REDUCTION)) break;
+
+            lods.add(lod);
+            triangles = lod.length / 3;
+        }
+        return lods.toArray(new int[0][]);
+    }
+
+    /**
+     * Simplify triangle list to at most target triangles if the shape allows it
+     * @param vertices vertex stream with float3 positions
+     * @param indices triangle list
+     * @param targetTriangles max triangle count
+     * @return simplified triangle list over the same vertices
+     */
+    public static int[] simplify(VertexStream vertices, int[] indices, int targetTriangles) {
+        return simplify(new Clustering(readPositions(vertices)), indices, targetTriangles);
+    }
+
+    private static int[] simplify(Clustering clustering, int[] indices, int targetTriangles) {
+        if (clustering.extent == 0) {
+            return indices.clone();
+        }
+
+        // coarser grid gives fewer triangles, find about the finest grid meeting the target
+        int low = 1;
+        int high = MAX_GRID_SIZE;
+        while (high - low > low / GRID_SEARCH_PRECISION) {
+            int middle = (low + high + 1) >>> 1;
+            if (clustering.countTriangles(middle, indices) <= targetTriangles) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return clustering.collapse(low, indices);
+    }
+
+    static float[] readPositions(VertexStream vertices) {
+        int vertexCount = vertices.getVertexCount();
+        var positions = new float[vertexCount * 3];
+        long address = memAddress(vertices.data()) + vertices.getLayout().offset(BGFX_ATTRIB_POSITION);
+        int stride = vertices.getStride();
+        for (int i = 0; i < vertexCount; i++, address += stride) {
+            positions[i * 3] = memGetFloat(address);
+            positions[i * 3 + 1] = memGetFloat(address + 4);
+            positions[i * 3 + 2] = memGetFloat(address + 8);
+        }
+        return positions;
+    }
+
+    /**
+     * Grid clustering of vertex positions, buffers are reused between grid sizes
+     */
+    private static final class Clustering {
+        /**
+         * Unique positions
+         */
+        private final float[] positions;
+        private final int positionCount;
+        private final int vertexCount;
+        private final int[] positionOfVertex;
+        /**
+         * First vertex with the position, used as cell representative
+         */
+        private final int[] vertexOfPosition;
+        private final float minX, minY, minZ;
+        private final float extent;
+
+        private final int[] cellOfPosition;
+        /**
+         * Representative position of every position
+         */
+        private final int[] remap;
+        /**
+         * Open addressing table from cell key to cell index
+         */
+        private final long[] tableKeys;
+        private final int[] tableCells;
+        private final float[] cellSums;
+        private final int[] cellCounts;
+        private final int[] cellPositions;
+        private final float[] cellDistances;
+
+        private Clustering(float[] vertexPositions) {
+            vertexCount = vertexPositions.length / 3;
+            positionOfVertex = new int[vertexCount];
+            vertexOfPosition = new int[vertexCount];
+            positions = new float[vertexCount * 3];
+            positionCount = weld(vertexPositions);
+
+            float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+            float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+            for (int i = 0; i < positionCount; i++) {
+                minX = Math.min(minX, positions[i * 3]);
+                minY = Math.min(minY, positions[i * 3 + 1]);
+                minZ = Math.min(minZ, positions[i * 3 + 2]);
+                maxX = Math.max(maxX, positions[i * 3]);
+                maxY = Math.max(maxY, positions[i * 3 + 1]);
+                maxZ = Math.max(maxZ, positions[i * 3 + 2]);
+            }
+            this.minX = minX;
+            this.minY = minY;
+            this.minZ = minZ;
+            extent = positionCount == 0 ? 0 : Math.max(maxX - minX, Math.max(maxY - minY, maxZ - minZ));
+
+            cellOfPosition = new int[positionCount];
+            remap = new int[positionCount];
+            tableKeys = new long[tableCapacity(positionCount)];
+            tableCells = new int[tableKeys.length];
+            cellSums = new float[positionCount * 3];
+            cellCounts = new int[positionCount];
+            cellPositions = new int[positionCount];
+            cellDistances = new float[positionCount];
+        }
+
+        private static int tableCapacity(int count) {
+            return Integer.highestOneBit(Math.max(1, count) * 2 - 1) << 1;
+        }
+
+        /**
+         * Collect unique positions of vertices
+         * @return unique position count
+         */
+        private int weld(float[] vertexPositions) {
+            var table = new int[tableCapacity(vertexCount)];
+            Arrays.fill(table, -1);
+            int mask = table.length - 1;
+            int count = 0;
+            for (int i = 0; i < vertexCount; i++) {
+                int x = Float.floatToIntBits(vertexPositions[i * 3]);
+                int y = Float.floatToIntBits(vertexPositions[i * 3 + 1]);
+                int z = Float.floatToIntBits(vertexPositions[i * 3 + 2]);
+                int slot = ((x * 31 + y) * 31 + z) * 0x9e3779b9 >>> 8 & mask;
+                while (table[slot] != -1) {
+                    int position = table[slot];
+                    if (Float.floatToIntBits(positions[position * 3]) == x
+                            && Float.floatToIntBits(positions[position * 3 + 1]) == y
+                            && Float.floatToIntBits(positions[position * 3 + 2]) == z) {
+                        break;
+                    }
+                    slot = (slot + 1) & mask;
+                }
+                if (table[slot] == -1) {
+                    table[slot] = count;
+                    System.arraycopy(vertexPositions, i * 3, positions, count * 3, 3);
+                    vertexOfPosition[count] = i;
+                    count++;
+                }
+                positionOfVertex[i] = table[slot];
+            }
+            return count;
+        }
+
+        private int countTriangles(int gridSize, int[] indices) {
+            cluster(gridSize);
+            int count = 0;
+            for (int i = 0; i + 2 < indices.length; i += 3) {
+                if (!isCollapsed(indices, i)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        private int[] collapse(int gridSize, int[] indices) {
+            cluster(gridSize);
+            var result = new int[indices.length];
+            int size = 0;
+            for (int i = 0; i + 2 < indices.length; i += 3) {
+                if (!isCollapsed(indices, i)) {
+                    result[size++] = vertexOfPosition[remap[positionOfVertex[indices[i]]]];
+                    result[size++] = vertexOfPosition[remap[positionOfVertex[indices[i + 1]]]];
+                    result[size++] = vertexOfPosition[remap[positionOfVertex[indices[i + 2]]]];
+                }
+            }
+            return Arrays.copyOf(result, size);
+        }
+
+        private boolean isCollapsed(int[] indices, int i) {
+            int a = remap[positionOfVertex[indices[i]]];
+            int b = remap[positionOfVertex[indices[i + 1]]];
+            int c = remap[positionOfVertex[indices[i + 2]]];
+            return a == b || b == c || a == c;
+        }
+
+        /**
+         * Assign positions to grid cells and remap every position to the representative of its cell
+         */
+        private void cluster(int gridSize) {
+            float scale = gridSize / extent;
+            Arrays.fill(tableKeys, -1);
+            int cellCount = 0;
+            for (int i = 0; i < positionCount; i++) {
+                long x = Math.min(gridSize - 1, (int) ((positions[i * 3] - minX) * scale));
+                long y = Math.min(gridSize - 1, (int) ((positions[i * 3 + 1] - minY) * scale));
+                long z = Math.min(gridSize - 1, (int) ((positions[i * 3 + 2] - minZ) * scale));
+                long key = x | y << 21 | z << 42;
+
+                int mask = tableKeys.length - 1;
+                int slot = (int) (key * 0x9e3779b97f4a7c15L >>> 40) & mask;
+                while (tableKeys[slot] != -1 && tableKeys[slot] != key) {
+                    slot = (slot + 1) & mask;
+                }
+                if (tableKeys[slot] == -1) {
+                    tableKeys[slot] = key;
+                    tableCells[slot] = cellCount;
+                    cellSums[cellCount * 3] = 0;
+                    cellSums[cellCount * 3 + 1] = 0;
+                    cellSums[cellCount * 3 + 2] = 0;
+                    cellCounts[cellCount] = 0;
+                    cellDistances[cellCount] = Float.POSITIVE_INFINITY;
+                    cellCount++;
+                }
+                int cell = tableCells[slot];
+                cellOfPosition[i] = cell;
+                cellSums[cell * 3] += positions[i * 3];
+                cellSums[cell * 3 + 1] += positions[i * 3 + 1];
+                cellSums[cell * 3 + 2] += positions[i * 3 + 2];
+                cellCounts[cell]++;
+            }
+
+            for (int i = 0; i < positionCount; i++) {
+                int cell = cellOfPosition[i];
+                float count = cellCounts[cell];
+                float dx = positions[i * 3] - cellSums[cell * 3] / count;
+                float dy = positions[i * 3 + 1] - cellSums[cell * 3 + 1] / count;
+                float dz = positions[i * 3 + 2] - cellSums[cell * 3 + 2] / count;
+                float distance = dx * dx + dy * dy + dz * dz;
+                if (distance < cellDistances[cell]) {
+                    cellDistances[cell] = distance;
+                    cellPositions[cell] = i;
+                }
+            }
+
+            for (int i = 0; i < positionCount; i++) {
+                remap[i] = cellPositions[cellOfPosition[i]];
+            }
+        }
+    }
+}
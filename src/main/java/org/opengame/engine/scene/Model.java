@@ -1,7 +1,7 @@
 package org.opengame.engine.scene;
 
 import lombok.Getter;
-import org.joml.Vector3f;
+import org.joml.Vector3fc;
 import org.opengame.engine.object.Renderable;
 
 import java.io.IOException;
@@ -11,18 +11,34 @@ public class Model implements Renderable {
     private String model;
     @Getter
     private List<Mesh> meshes;
+    /**
+     * Parent transform of all meshes
+     */
+    @Getter
+    private final TransformNode transform = new TransformNode();
 
     public Model(List<Mesh> meshes) {
         this.meshes = meshes;
+        meshes.forEach((mesh) -> mesh.getTransform().setParent(transform));
     }
 
-    public void setRotation(Vector3f setRotation) {
-        meshes.forEach((mesh) -> mesh.setRotation(setRotation));
+    public void setRotation(Vector3fc rotation) {
+        transform.setRotation(rotation);
+    }
+    public void setPosition(Vector3fc position) {
+        transform.setPosition(position);
     }
-    public void setPosition(Vector3f position) {
-        meshes.forEach((mesh) -> mesh.setPosition(position));
+
+    /**
+     * @param isStatic model never moves after the scene is finalized, its meshes can be batched
+     */
+    public void setStatic(boolean isStatic) {
+        meshes.forEach((mesh) -> mesh.setStatic(isStatic));
     }
 
+    /**
+     * @param textureName texture of all meshes, fails if meshes were merged into static batches
+     */
     public void setTexture(String textureName) {
         meshes.forEach(mesh -> {
             try {
@@ -32,8 +48,24 @@ public class Model implements Renderable {
             }
         });
     }
+    /**
+     * @return union of world bounds of all meshes, null for model without meshes
+     */
+    public Bounds getWorldBounds() {
+        Bounds bounds = null;
+        for (var mesh : meshes) {
+            bounds = bounds == null ? new Bounds().set(mesh.getWorldBounds()) : bounds.union(mesh.getWorldBounds());
+        }
+        return bounds;
+    }
+
     @Override
     public void frame(float time, float frameTimeMs) {
         meshes.forEach((mesh) -> mesh.frame(time, frameTimeMs));
     }
+
+    public void dispose() {
+        meshes.forEach(Mesh::dispose);
+        transform.dispose();
+    }
 }
@@ -1,14 +1,33 @@
 package org.opengame.engine.scene;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.java.Log;
 import org.opengame.engine.camera.Camera;
 import org.opengame.engine.camera.FlyingCamera;
+import org.opengame.engine.object.Cullable;
+import org.opengame.engine.object.LodSelectable;
 import org.opengame.engine.object.SceneObject;
+import org.opengame.engine.object.Sortable;
+import org.opengame.engine.object.Submittable;
+import org.opengame.engine.profiler.FrameProfiler;
+import org.opengame.engine.profiler.ProfilerMetric;
+import org.opengame.engine.render.RenderQueue;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
 
+import static org.lwjgl.bgfx.BGFX.bgfx_encoder_begin;
+import static org.lwjgl.bgfx.BGFX.bgfx_encoder_end;
+import static org.lwjgl.bgfx.BGFX.bgfx_touch;
+
 /**
  * Scene
  */
@@ -16,27 +35,281 @@ import java.util.Vector;
 @Setter
 @Log
 public class Scene {
+    /**
+     * Enlargement of index boxes, objects moving less than this stay in place in the index
+     */
+    private static final float INDEX_MARGIN = 0.5f;
+
     private String name;
     private final Vector<SceneObject> objects;
+    /**
+     * Main camera, rendered first
+     */
     private Camera camera;
+    /**
+     * Main camera followed by additional cameras, each renders the scene into its own view
+     */
+    @Getter(AccessLevel.NONE)
+    private final List<Camera> cameras = new ArrayList<>();
+    /**
+     * Interpolation alpha between simulation ticks of the frame being rendered
+     */
+    private float interpolationAlpha = 1.0f;
+    /**
+     * Skip objects outside of the camera frustum
+     */
+    private boolean cullingEnabled = true;
+    /**
+     * Spatial index of cullable objects, can be used for area, neighbour and ray queries
+     */
+    private final BoundsTree<SceneObject> index = new BoundsTree<>(INDEX_MARGIN);
+    /**
+     * Cullable objects rendered in the last frame, summed over cameras
+     */
+    private int drawnCount;
+    /**
+     * Cullable objects skipped in the last frame, summed over cameras
+     */
+    private int culledCount;
+    /**
+     * Visible objects of the main camera per selected level of detail in the last frame
+     */
+    private final int[] lodHistogram = new int[Mesh.MAX_LODS];
+    /**
+     * Meshes merged into static batches
+     */
+    private int batchedMeshCount;
+    /**
+     * Static batches of the scene
+     */
+    private int staticBatchCount;
+    /**
+     * Visible parts of static batches in the last frame, summed over cameras
+     */
+    private int visibleBatchPartCount;
+    /**
+     * Draw calls submitted by static batches in the last frame, summed over cameras
+     */
+    private int batchDrawCount;
+    /**
+     * Objects moved in the index in the last frame
+     */
+    private int indexUpdateCount;
+    /**
+     * Time spent updating the index in the last frame
+     */
+    private long indexUpdateNanos;
+    /**
+     * Sorted draws of the last frame
+     */
+    private final RenderQueue renderQueue = new RenderQueue();
+
+    @Getter(AccessLevel.NONE)
+    private final Map<SceneObject, Integer> proxies = new LinkedHashMap<>();
+    @Getter(AccessLevel.NONE)
+    private final Set<SceneObject> movedObjects = new LinkedHashSet<>();
+    /**
+     * Objects without bounds, always rendered
+     */
+    @Getter(AccessLevel.NONE)
+    private final List<SceneObject> unboundedObjects = new ArrayList<>();
+    @Getter(AccessLevel.NONE)
+    private final List<SceneObject> visibleObjects = new ArrayList<>();
+    @Getter(AccessLevel.NONE)
+    private final BoundsTree.FrustumVisitor<SceneObject> cullVisitor = this::addIfVisible;
+    @Getter(AccessLevel.NONE)
+    private Camera cullCamera;
 
     public Scene() {
         objects = new Vector<>();
         setCamera(FlyingCamera.createDefault());
         name = "TestScene";
-
-        camera.setViewProjection();
     }
 
-    public void add(SceneObject mesh) {
-        objects.add(mesh);
+    public void add(SceneObject object) {
+        objects.add(object);
+        if (object instanceof Cullable) {
+            proxies.put(object, index.insert(((Cullable) object).getWorldBounds(), object));
+            object.setMoveListener(movedObjects::add);
+        } else {
+            unboundedObjects.add(object);
+        }
     }
+
     public void add(Model model) {
-        objects.addAll(model.getMeshes());
+        model.getMeshes().forEach(this::add);
+    }
+
+    public void remove(SceneObject object) {
+        if (!objects.remove(object)) return;
+
+        var proxy = proxies.remove(object);
+        if (proxy != null) {
+            index.remove(proxy);
+            movedObjects.remove(object);
+            object.setMoveListener(null);
+        } else {
+            unboundedObjects.remove(object);
+        }
+    }
+
+    /**
+     * Finalize static geometry: merge static meshes sharing program, texture and vertex attributes
+     * into static batches. Batched meshes are removed from the scene and disposed,
+     * their texture and transform can't be changed anymore, also through their model.
+     * Call after static meshes are added, meshes added later are batched by the next call
+     * @return number of created batches
+     */
+    public int bakeStaticBatches() {
+        var candidates = new ArrayList<Mesh>();
+        for (var object : objects) {
+            if (object instanceof Mesh) {
+                candidates.add((Mesh) object);
+            }
+        }
+
+        long startTime = System.nanoTime();
+        var groups = StaticBatch.group(candidates);
+        int meshCount = 0;
+        for (var group : groups) {
+            var batch = new StaticBatch(group);
+            for (var mesh : group) {
+                remove(mesh);
+                mesh.dispose();
+            }
+            add(batch);
+            meshCount += group.size();
+        }
+        batchedMeshCount += meshCount;
+        staticBatchCount += groups.size();
+        if (!groups.isEmpty()) {
+            log.info("Merged " + meshCount + " static meshes into " + groups.size() + " batches in "
+                    + (System.nanoTime() - startTime) / 1000000 + " ms, saving up to "
+                    + (meshCount - groups.size()) + " draw calls per view");
+        }
+        return groups.size();
     }
 
     public void render(float time, float frameTime) {
-        objects.forEach((mesh) -> mesh.frame(time, frameTime));
+        render(time, frameTime, 1.0f);
+    }
+
+    public void render(float time, float frameTime, float interpolationAlpha) {
+        var queue = prepareRender(time, frameTime, interpolationAlpha);
+
+        try (var scope = FrameProfiler.scope(ProfilerMetric.SUBMIT)) {
+            long encoder = bgfx_encoder_begin(false);
+            queue.submit(encoder, 0, queue.getSize());
+            bgfx_encoder_end(encoder);
+        }
+    }
+
+    /**
+     * Update camera views, cull the scene for every camera and sort visible draws into the render queue,
+     * views of draw keys are replaced by camera views.
+     * Objects which can't be submitted into an encoder are rendered right away, once per frame.
+     * Must be called on the main thread
+     * @return sorted queue ready for submission, valid until the next call
+     */
+    public RenderQueue prepareRender(float time, float frameTime, float interpolationAlpha) {
+        this.interpolationAlpha = interpolationAlpha;
+
+        renderQueue.clear();
+        int drawn = 0;
+        int culled = 0;
+        int visibleParts = 0;
+        int batchDraws = 0;
+        Arrays.fill(lodHistogram, 0);
+        for (int i = 0; i < cameras.size(); i++) {
+            var viewCamera = cameras.get(i);
+            viewCamera.prepareFrame(interpolationAlpha);
+            int viewId = viewCamera.getViewId();
+            // view of the main camera is touched by the engine
+            if (i > 0) {
+                bgfx_touch(viewId);
+            }
+
+            var eye = viewCamera.getEye();
+            float projectionScale = viewCamera.getProjectionScale();
+            for (var object : cull(viewCamera)) {
+                if (object instanceof StaticBatch) {
+                    var batch = (StaticBatch) object;
+                    int parts = batch.cullParts(viewCamera.getFrustum(), viewId);
+                    if (parts == 0) continue;
+
+                    visibleParts += parts;
+                    batchDraws += batch.getDrawCount(viewId);
+                }
+                // level of detail is shared by all views, the main camera selects it
+                if (i == 0 && object instanceof LodSelectable) {
+                    lodHistogram[((LodSelectable) object).selectLod(eye, projectionScale)]++;
+                }
+                if (object instanceof Sortable) {
+                    renderQueue.add((Submittable) object,
+                            RenderQueue.withView(((Sortable) object).getSortKey(eye), viewId));
+                } else if (object instanceof Submittable) {
+                    renderQueue.add((Submittable) object, RenderQueue.withView(0, viewId));
+                } else if (i == 0) {
+                    object.frame(time, frameTime);
+                }
+            }
+            drawn += drawnCount;
+            culled += culledCount;
+        }
+        drawnCount = drawn;
+        culledCount = culled;
+        visibleBatchPartCount = visibleParts;
+        batchDrawCount = batchDraws;
+        renderQueue.sort();
+        return renderQueue;
+    }
+
+    /**
+     * Cull for the main camera
+     * @return objects to render, valid until the next call
+     */
+    public List<SceneObject> cull() {
+        return cull(camera);
+    }
+
+    /**
+     * Update the index with moved objects and collect objects to render in this frame:
+     * objects without bounds followed by cullable objects intersecting the camera frustum.
+     * Must be called on the main thread
+     * @param camera camera with up to date frustum
+     * @return objects to render, valid until the next call
+     */
+    public List<SceneObject> cull(Camera camera) {
+        updateIndex();
+        cullCamera = camera;
+
+        visibleObjects.clear();
+        visibleObjects.addAll(unboundedObjects);
+        if (cullingEnabled) {
+            index.query(camera.getFrustum(), cullVisitor);
+        } else {
+            visibleObjects.addAll(proxies.keySet());
+        }
+
+        drawnCount = visibleObjects.size() - unboundedObjects.size();
+        culledCount = proxies.size() - drawnCount;
+        return visibleObjects;
+    }
+
+    private void addIfVisible(SceneObject object, boolean inside) {
+        if (inside || ((Cullable) object).isVisible(cullCamera.getFrustum())) {
+            visibleObjects.add(object);
+        }
+    }
+
+    private void updateIndex() {
+        long startTime = System.nanoTime();
+        indexUpdateCount = movedObjects.size();
+        for (var object : movedObjects) {
+            index.move(proxies.get(object), ((Cullable) object).getWorldBounds());
+        }
+        movedObjects.clear();
+        indexUpdateNanos = System.nanoTime() - startTime;
     }
 
     public void update() {
@@ -45,10 +318,30 @@ public class Scene {
 
     public void setCamera(Camera camera) {
         if (this.camera != null) {
-            objects.remove(camera);
+            remove(this.camera);
+            cameras.remove(this.camera);
         }
         this.camera = camera;
-        objects.add(camera);
+        cameras.add(0, camera);
+        add(camera);
+    }
+
+    /**
+     * Render the scene with another camera, e.g. split screen or minimap.
+     * Camera should use its own bgfx view, views are drawn in ascending order of their ids
+     */
+    public void addCamera(Camera camera) {
+        cameras.add(camera);
+        add(camera);
+    }
+
+    public void removeCamera(Camera camera) {
+        if (camera == this.camera) {
+            throw new IllegalArgumentException("Main camera can only be replaced");
+        }
+        if (cameras.remove(camera)) {
+            remove(camera);
+        }
     }
 
     public String getStats() {
@@ -57,6 +350,9 @@ public class Scene {
                 var mesh = (Mesh) object;
                 return mesh.getVertexCount();
             }
+            if (object instanceof StaticBatch) {
+                return ((StaticBatch) object).getVertexCount();
+            }
             return 0;
         }).sum();
         var indexCount = objects.parallelStream().mapToInt((object) -> {
@@ -64,8 +360,17 @@ public class Scene {
                 var mesh = (Mesh) object;
                 return mesh.getIndexCount();
             }
+            if (object instanceof StaticBatch) {
+                return ((StaticBatch) object).getIndexCount();
+            }
             return 0;
         }).sum();
-        return "[meshes: " + objects.size() + "; vertices: " + vertexCount + "; indices: " + indexCount + "]";
+        return "[meshes: " + objects.size() + "; vertices: " + vertexCount + "; indices: " + indexCount
+                + "; drawn: " + drawnCount + "; culled: " + culledCount + "; lods: " + Arrays.toString(lodHistogram)
+                + "; static batches: " + staticBatchCount + " of " + batchedMeshCount + " meshes, "
+                + visibleBatchPartCount + " visible parts in " + batchDrawCount + " draws"
+                + "; index updates: " + indexUpdateCount + " in " + indexUpdateNanos / 1000 + " us"
+                + "; transforms: " + TransformStorage.getSlotCount() + ", " + TransformStorage.getUpdateCount()
+                + " updates; index: " + index.getStats() + "; queue: " + renderQueue.getStats() + "]";
     }
 }
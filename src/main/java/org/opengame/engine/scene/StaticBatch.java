@@ -0,0 +1,461 @@
+package org.opengame.engine.scene;
+
+import lombok.Getter;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix3f;
+import org.joml.Matrix4x3f;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+import org.lwjgl.bgfx.BGFXVertexLayout;
+import org.lwjgl.system.MemoryStack;
+import org.opengame.engine.Engine;
+import org.opengame.engine.asset.AssetManager;
+import org.opengame.engine.asset.AssetManager.AssetType;
+import org.opengame.engine.object.Cullable;
+import org.opengame.engine.object.SceneObject;
+import org.opengame.engine.object.Sortable;
+import org.opengame.engine.render.RenderQueue;
+import org.opengame.engine.render.VertexQuantizer;
+import org.opengame.engine.render.VertexStream;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.lwjgl.bgfx.BGFX.*;
+import static org.lwjgl.system.MemoryUtil.*;
+
+/**
+ * Static meshes sharing program, texture and vertex attributes merged into one vertex and index buffer
+ * with world transforms baked into positions and normals, drawn without a transform.
+ * Quantized positions are dequantized into floats, normals keep their float or octahedral format.
+ * Every source mesh becomes a part, a range of the index buffer with its own world bounds.
+ * Parts are ordered along a Morton curve so neighbouring parts are adjacent in the index buffer,
+ * visible parts are collected per view and consecutive ones are drawn by one draw call.
+ * Only the full detail level of source meshes is batched.
+ */
+public class StaticBatch extends SceneObject implements Sortable, Cullable {
+    /**
+     * Batches and their source meshes have 16 bit indices
+     */
+    public static final int MAX_VERTICES = Mesh.MAX_INDEX16_VERTICES;
+    private static final int MAX_VIEWS = 256;
+    private static final int MORTON_BITS = 10;
+
+    @Getter
+    private final int partCount;
+    @Getter
+    private final int vertexCount;
+    @Getter
+    private final int indexCount;
+    private final BGFXVertexLayout layout;
+    /**
+     * Attributes other than position and normal, copied as they are
+     */
+    private final int[] copiedAttributes;
+    private final int[] copiedOffsets;
+    private final int[] copiedSizes;
+    private final short vertexBuffer;
+    private final short indexBuffer;
+    private final short program;
+    private final boolean ownProgram;
+    private final short texture;
+    private final short textureUniform;
+
+    private final int[] partFirstIndices;
+    private final int[] partIndexCounts;
+    private final Bounds[] partBounds;
+    private final Bounds worldBounds = new Bounds();
+    /**
+     * First index and index count of every draw, indexed by view, allocated when the view is culled first
+     */
+    private final int[][] viewDraws = new int[MAX_VIEWS][];
+    private final int[] viewDrawCounts = new int[MAX_VIEWS];
+
+    /**
+     * Merge meshes, source meshes stay valid and should be disposed by the caller
+     * @param meshes meshes accepted by canBatch with the same batch key, in draw order, up to MAX_VERTICES in total
+     */
+    public StaticBatch(List<Mesh> meshes) {
+        if (meshes.isEmpty()) {
+            throw new IllegalArgumentException("Static batch needs at least one mesh");
+        }
+        var first = meshes.get(0);
+        partCount = meshes.size();
+        vertexCount = meshes.stream().mapToInt(Mesh::getVertexCount).sum();
+        indexCount = meshes.stream().mapToInt(Mesh::getIndexCount).sum();
+        if (vertexCount > MAX_VERTICES) {
+            throw new IllegalArgumentException("Static batch can have at most " + MAX_VERTICES + " vertices");
+        }
+
+        layout = createLayout(first.getLayout());
+        copiedAttributes = IntStream.range(0, BGFX_ATTRIB_COUNT)
+                .filter((attrib) -> attrib != BGFX_ATTRIB_POSITION && attrib != BGFX_ATTRIB_NORMAL
+                        && bgfx_vertex_layout_has(layout, attrib))
+                .toArray();
+        copiedOffsets = Arrays.stream(copiedAttributes).map(layout::offset).toArray();
+        copiedSizes = Arrays.stream(copiedAttributes).map(this::attributeSize).toArray();
+        var vertices = VertexStream.allocate(layout, vertexCount);
+        var indices = memAlloc(indexCount * Short.BYTES);
+        partFirstIndices = new int[partCount];
+        partIndexCounts = new int[partCount];
+        partBounds = new Bounds[partCount];
+
+        long vertexAddress = memAddress(vertices.data());
+        int baseVertex = 0;
+        int firstIndex = 0;
+        for (int i = 0; i < partCount; i++) {
+            var mesh = meshes.get(i);
+            copyVertices(mesh, vertexAddress + (long) baseVertex * layout.stride());
+            copyIndices(mesh, indices, baseVertex);
+
+            partFirstIndices[i] = firstIndex;
+            partIndexCounts[i] = mesh.getIndexCount();
+            partBounds[i] = new Bounds().set(mesh.getWorldBounds());
+            if (i == 0) {
+                worldBounds.set(partBounds[i]);
+            } else {
+                worldBounds.union(partBounds[i]);
+            }
+            baseVertex += mesh.getVertexCount();
+            firstIndex += mesh.getIndexCount();
+        }
+
+        vertexBuffer = AssetManager.acquireVertexBuffer(vertices.fill().flip(), layout);
+        indexBuffer = AssetManager.acquireIndexBuffer(indices.flip());
+
+        ownProgram = first.isOwnProgram();
+        program = first.getProgram();
+        if (ownProgram) {
+            AssetManager.retain(AssetType.PROGRAM, program);
+        }
+        texture = first.getTexture();
+        AssetManager.retain(AssetType.TEXTURE, texture);
+        textureUniform = bgfx_create_uniform("s_texColor", BGFX_UNIFORM_TYPE_VEC4, 1);
+    }
+
+    /**
+     * @param mesh mesh
+     * @return true if the mesh is static, opaque and fits into a batch
+     */
+    public static boolean canBatch(Mesh mesh) {
+        return mesh.isStatic() && !mesh.isTranslucent() && mesh.getVertexCount() <= MAX_VERTICES;
+    }
+
+    /**
+     * Split meshes into groups which can be merged: same program, texture and attributes other than position,
+     * ordered spatially and limited to MAX_VERTICES. Meshes which can't be batched or don't share
+     * their batch key with another mesh are left out
+     * @param meshes candidate meshes
+     * @return groups of at least two meshes
+     */
+    public static List<List<Mesh>> group(List<Mesh> meshes) {
+        var byKey = new LinkedHashMap<String, List<Mesh>>();
+        for (var mesh : meshes) {
+            if (canBatch(mesh)) {
+                byKey.computeIfAbsent(getBatchKey(mesh), (key) -> new ArrayList<>()).add(mesh);
+            }
+        }
+
+        var groups = new ArrayList<List<Mesh>>();
+        for (var candidates : byKey.values()) {
+            if (candidates.size() < 2) continue;
+
+            sortSpatially(candidates);
+            var group = new ArrayList<Mesh>();
+            int groupVertexCount = 0;
+            for (var mesh : candidates) {
+                if (groupVertexCount + mesh.getVertexCount() > MAX_VERTICES) {
+                    addGroup(groups, group);
+                    group = new ArrayList<>();
+                    groupVertexCount = 0;
+                }
+                group.add(mesh);
+                groupVertexCount += mesh.getVertexCount();
+            }
+            addGroup(groups, group);
+        }
+        return groups;
+    }
+
+    private static void addGroup(List<List<Mesh>> groups, List<Mesh> group) {
+        if (group.size() > 1) {
+            groups.add(group);
+        }
+    }
+
+    /**
+     * Render state and attributes except position, which is always stored as float3 in the batch
+     */
+    private static String getBatchKey(Mesh mesh) {
+        var key = new StringBuilder()
+                .append(mesh.isOwnProgram() ? mesh.getProgram() : -1).append(':')
+                .append(mesh.getTexture());
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            var num = stack.malloc(1);
+            var type = stack.mallocInt(1);
+            var normalized = stack.malloc(1);
+            var asInt = stack.malloc(1);
+            for (int attrib = 0; attrib < BGFX_ATTRIB_COUNT; attrib++) {
+                if (attrib == BGFX_ATTRIB_POSITION || !bgfx_vertex_layout_has(mesh.getLayout(), attrib)) continue;
+
+                bgfx_vertex_layout_decode(mesh.getLayout(), attrib, num, type, normalized, asInt);
+                key.append(':').append(attrib).append('/').append(num.get(0)).append('/').append(type.get(0))
+                        .append('/').append(normalized.get(0)).append('/').append(asInt.get(0));
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Order by Morton code of world bounds centers within the bounds of all centers
+     */
+    private static void sortSpatially(List<Mesh> meshes) {
+        var min = new Vector3f(Float.POSITIVE_INFINITY);
+        var max = new Vector3f(Float.NEGATIVE_INFINITY);
+        for (var mesh : meshes) {
+            min.min(mesh.getWorldBounds().getCenter());
+            max.max(mesh.getWorldBounds().getCenter());
+        }
+        var extent = max.sub(min);
+        var codes = new LinkedHashMap<Mesh, Long>();
+        for (var mesh : meshes) {
+            codes.put(mesh, mortonCode(mesh.getWorldBounds().getCenter(), min, extent));
+        }
+        meshes.sort(Comparator.comparingLong(codes::get));
+    }
+
+    private static long mortonCode(Vector3fc point, Vector3fc min, Vector3fc extent) {
+        int scale = (1 << MORTON_BITS) - 1;
+        long x = extent.x() > 0 ? (long) ((point.x() - min.x()) / extent.x() * scale) : 0;
+        long y = extent.y() > 0 ? (long) ((point.y() - min.y()) / extent.y() * scale) : 0;
+        long z = extent.z() > 0 ? (long) ((point.z() - min.z()) / extent.z() * scale) : 0;
+        long code = 0;
+        for (int bit = 0; bit < MORTON_BITS; bit++) {
+            code |= (x >> bit & 1) << (3 * bit) | (y >> bit & 1) << (3 * bit + 1) | (z >> bit & 1) << (3 * bit + 2);
+        }
+        return code;
+    }
+
+    /**
+     * Float3 position followed by other attributes of the source layout
+     */
+    private static BGFXVertexLayout createLayout(BGFXVertexLayout source) {
+        var layout = BGFXVertexLayout.calloc();
+        bgfx_vertex_layout_begin(layout, Engine.getRenderer());
+        bgfx_vertex_layout_add(layout, BGFX_ATTRIB_POSITION, 3, BGFX_ATTRIB_TYPE_FLOAT, false, false);
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            var num = stack.malloc(1);
+            var type = stack.mallocInt(1);
+            var normalized = stack.malloc(1);
+            var asInt = stack.malloc(1);
+            for (int attrib = 0; attrib < BGFX_ATTRIB_COUNT; attrib++) {
+                if (attrib == BGFX_ATTRIB_POSITION || !bgfx_vertex_layout_has(source, attrib)) continue;
+
+                bgfx_vertex_layout_decode(source, attrib, num, type, normalized, asInt);
+                bgfx_vertex_layout_add(layout, attrib, num.get(0), type.get(0), normalized.get(0) != 0,
+                        asInt.get(0) != 0);
+            }
+        }
+        bgfx_vertex_layout_end(layout);
+        return layout;
+    }
+
+    /**
+     * Copy vertices of the mesh with positions and normals transformed into world space
+     */
+    private void copyVertices(Mesh mesh, long destination) {
+        var source = mesh.getLayout();
+        long sourceAddress = memAddress(AssetManager.getBufferData(AssetType.VERTEX_BUFFER, mesh.getVertexBuffer()));
+        int sourceStride = source.stride();
+        int stride = layout.stride();
+
+        var world = mesh.getTransform().getWorld();
+        var positionTransform = new Matrix4x3f(world).mul(mesh.getDequantization());
+        var normalTransform = world.normal(new Matrix3f());
+        boolean quantized = isInt16(source, BGFX_ATTRIB_POSITION);
+        boolean hasNormal = bgfx_vertex_layout_has(source, BGFX_ATTRIB_NORMAL);
+        boolean octahedral = hasNormal && isInt16(source, BGFX_ATTRIB_NORMAL);
+
+        int sourcePosition = source.offset(BGFX_ATTRIB_POSITION);
+        int sourceNormal = source.offset(BGFX_ATTRIB_NORMAL);
+        int position = layout.offset(BGFX_ATTRIB_POSITION);
+        int normal = layout.offset(BGFX_ATTRIB_NORMAL);
+        var sourceOffsets = new int[copiedAttributes.length];
+        for (int a = 0; a < copiedAttributes.length; a++) {
+            sourceOffsets[a] = source.offset(copiedAttributes[a]);
+        }
+
+        var vector = new Vector3f();
+        for (int i = 0; i < mesh.getVertexCount(); i++) {
+            long src = sourceAddress + (long) i * sourceStride;
+            long dst = destination + (long) i * stride;
+
+            long srcPosition = src + sourcePosition;
+            if (quantized) {
+                vector.set(VertexQuantizer.fromInt16(memGetShort(srcPosition)),
+                        VertexQuantizer.fromInt16(memGetShort(srcPosition + 2)),
+                        VertexQuantizer.fromInt16(memGetShort(srcPosition + 4)));
+            } else {
+                vector.set(memGetFloat(srcPosition), memGetFloat(srcPosition + 4), memGetFloat(srcPosition + 8));
+            }
+            positionTransform.transformPosition(vector);
+            putVector(dst + position, vector);
+
+            if (octahedral) {
+                VertexQuantizer.getOctahedral(src + sourceNormal, vector);
+                normalTransform.transform(vector).normalize();
+                VertexQuantizer.putOctahedral(dst + normal, vector.x, vector.y, vector.z);
+            } else if (hasNormal) {
+                long srcNormal = src + sourceNormal;
+                vector.set(memGetFloat(srcNormal), memGetFloat(srcNormal + 4), memGetFloat(srcNormal + 8));
+                normalTransform.transform(vector).normalize();
+                putVector(dst + normal, vector);
+            }
+
+            for (int a = 0; a < copiedAttributes.length; a++) {
+                memCopy(src + sourceOffsets[a], dst + copiedOffsets[a], copiedSizes[a]);
+            }
+        }
+    }
+
+    /**
+     * Append full detail indices of the mesh offset by its first vertex in the batch,
+     * meshes and batches within MAX_VERTICES have 16 bit indices
+     */
+    private void copyIndices(Mesh mesh, ByteBuffer destination, int baseVertex) {
+        long source = memAddress(AssetManager.getBufferData(AssetType.INDEX_BUFFER, mesh.getIndexBuffer()));
+        for (int i = 0; i < mesh.getIndexCount(); i++) {
+            destination.putShort((short) (baseVertex + (memGetShort(source + (long) i * Short.BYTES) & 0xffff)));
+        }
+    }
+
+    /**
+     * Attribute size in the batch layout, distance to the next attribute or to the end of the vertex
+     */
+    private int attributeSize(int attrib) {
+        int offset = layout.offset(attrib);
+        int end = layout.stride();
+        for (int other = 0; other < BGFX_ATTRIB_COUNT; other++) {
+            if (bgfx_vertex_layout_has(layout, other) && layout.offset(other) > offset) {
+                end = Math.min(end, layout.offset(other));
+            }
+        }
+        return end - offset;
+    }
+
+    private static boolean isInt16(BGFXVertexLayout layout, int attrib) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            var type = stack.mallocInt(1);
+            bgfx_vertex_layout_decode(layout, attrib, stack.malloc(1), type, stack.malloc(1), stack.malloc(1));
+            return type.get(0) == BGFX_ATTRIB_TYPE_INT16;
+        }
+    }
+
+    private static void putVector(long address, Vector3fc vector) {
+        memPutFloat(address, vector.x());
+        memPutFloat(address + 4, vector.y());
+        memPutFloat(address + 8, vector.z());
+    }
+
+    /**
+     * Cull parts against the view frustum and merge visible parts adjacent in the index buffer into draws.
+     * Called on the main thread after the batch itself passed culling
+     * @param frustum view frustum
+     * @param view view the draws are submitted to
+     * @return number of visible parts
+     */
+    public int cullParts(FrustumIntersection frustum, int view) {
+        var draws = viewDraws[view];
+        if (draws == null) {
+            draws = new int[partCount * 2];
+            viewDraws[view] = draws;
+        }
+
+        int drawCount = 0;
+        int visibleCount = 0;
+        boolean previousVisible = false;
+        for (int i = 0; i < partCount; i++) {
+            boolean visible = partBounds[i].isVisible(frustum);
+            if (visible) {
+                if (previousVisible) {
+                    draws[drawCount * 2 - 1] += partIndexCounts[i];
+                } else {
+                    draws[drawCount * 2] = partFirstIndices[i];
+                    draws[drawCount * 2 + 1] = partIndexCounts[i];
+                    drawCount++;
+                }
+                visibleCount++;
+            }
+            previousVisible = visible;
+        }
+        viewDrawCounts[view] = drawCount;
+        return visibleCount;
+    }
+
+    /**
+     * @param view view
+     * @return draw calls submitted to the view, as of the last cullParts
+     */
+    public int getDrawCount(int view) {
+        return viewDrawCounts[view];
+    }
+
+    @Override
+    public Bounds getWorldBounds() {
+        return worldBounds;
+    }
+
+    @Override
+    public boolean isVisible(FrustumIntersection frustum) {
+        return worldBounds.isVisible(frustum);
+    }
+
+    @Override
+    public long getSortKey(Vector3fc eye) {
+        return RenderQueue.createKey(0, false, program, texture, worldBounds.getCenter().distance(eye));
+    }
+
+    /**
+     * Submit visible ranges of the view, the whole batch if the view wasn't culled
+     */
+    @Override
+    public void submit(long encoder, int view, int depth) {
+        var draws = viewDraws[view];
+        if (draws == null) {
+            submitRange(encoder, view, depth, 0, indexCount);
+            return;
+        }
+        for (int i = 0; i < viewDrawCounts[view]; i++) {
+            submitRange(encoder, view, depth, draws[i * 2], draws[i * 2 + 1]);
+        }
+    }
+
+    private void submitRange(long encoder, int view, int depth, int firstIndex, int count) {
+        bgfx_encoder_set_vertex_buffer(encoder, 0, vertexBuffer, 0, vertexCount);
+        bgfx_encoder_set_index_buffer(encoder, indexBuffer, firstIndex, count);
+
+        bgfx_encoder_set_texture(encoder, 0, textureUniform, texture, 0xffffffff);
+
+        bgfx_encoder_set_state(encoder, BGFX_STATE_WRITE_RGB | BGFX_STATE_WRITE_A | BGFX_STATE_WRITE_Z
+                | BGFX_STATE_DEPTH_TEST_LESS | BGFX_STATE_MSAA, 0);
+
+        bgfx_encoder_submit(encoder, view, program, depth, 0);
+    }
+
+    public void dispose() {
+        if (ownProgram) {
+            AssetManager.release(AssetType.PROGRAM, program);
+        }
+        AssetManager.release(AssetType.TEXTURE, texture);
+        bgfx_destroy_uniform(textureUniform);
+
+        AssetManager.release(AssetType.VERTEX_BUFFER, vertexBuffer);
+        AssetManager.release(AssetType.INDEX_BUFFER, indexBuffer);
+        layout.free();
+    }
+}
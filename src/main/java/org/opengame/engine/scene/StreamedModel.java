@@ -0,0 +1,160 @@
+package org.opengame.engine.scene;
+
+import lombok.Getter;
+import lombok.extern.java.Log;
+import org.joml.Vector3fc;
+import org.opengame.engine.asset.AsyncLoader;
+import org.opengame.engine.object.LodSelectable;
+import org.opengame.engine.object.SceneObject;
+import org.opengame.engine.object.Sortable;
+import org.opengame.engine.render.VertexStream;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Model loaded in background. Placeholder cube with default texture is rendered until all meshes are resident
+ */
+@Log
+public class StreamedModel extends SceneObject implements Sortable, LodSelectable {
+    private static final int[] PLACEHOLDER_INDICES = {
+            0, 1, 2,
+            1, 3, 2,
+            4, 6, 5,
+            5, 6, 7,
+            0, 2, 4,
+            4, 2, 6,
+            1, 5, 3,
+            5, 7, 3,
+            0, 4, 1,
+            4, 5, 1,
+            2, 3, 6,
+            6, 3, 7
+    };
+
+    private final Mesh placeholder;
+    /**
+     * Parent of the placeholder and of the loaded model
+     */
+    @Getter
+    private final TransformNode transform = new TransformNode();
+    @Getter
+    private final CompletableFuture<Model> future;
+    private Model model;
+    private boolean disposed;
+
+    public StreamedModel(CompletableFuture<Model> future) throws IOException {
+        // placeholder buffers and texture are shared between all streamed models by asset manager
+        placeholder = new Mesh(createPlaceholderVertices(), PLACEHOLDER_INDICES,
+                "vs_simple_textured", "fs_simple_textured", null);
+        placeholder.getTransform().setParent(transform);
+
+        this.future = future;
+        future.whenComplete((loadedModel, error) -> {
+            if (error != null) {
+                log.warning("Streamed model is not loaded, placeholder stays: " + error);
+                return;
+            }
+            if (disposed) {
+                loadedModel.dispose();
+                return;
+            }
+            loadedModel.getTransform().setParent(transform);
+            model = loadedModel;
+        });
+    }
+
+    /**
+     * Start loading model in background
+     * @param modelPath path to model file
+     * @return scene object which can be added to scene right away
+     */
+    public static StreamedModel load(String modelPath) throws IOException {
+        return new StreamedModel(AsyncLoader.loadModelAsync(modelPath));
+    }
+
+    private static VertexStream createPlaceholderVertices() {
+        var stream = VertexStream.allocate(Mesh.createVertexLayout(false, false, true), 8);
+        for (int i = 0; i < 8; i++) {
+            float x = (i & 1) == 0 ? -1.0f : 1.0f;
+            float y = (i & 2) == 0 ? 1.0f : -1.0f;
+            float z = (i & 4) == 0 ? 1.0f : -1.0f;
+            stream.position(x, y, z).texCoord((x + 1) / 2, (y + 1) / 2);
+        }
+        return stream;
+    }
+
+    public boolean isResident() {
+        return model != null;
+    }
+
+    public void setPosition(Vector3fc position) {
+        transform.setPosition(position);
+    }
+
+    public void setRotation(Vector3fc rotation) {
+        transform.setRotation(rotation);
+    }
+
+    @Override
+    public void frame(float time, float frameTimeMs) {
+        if (model != null) {
+            model.frame(time, frameTimeMs);
+        } else {
+            placeholder.frame(time, frameTimeMs);
+        }
+    }
+
+    /**
+     * Model is sorted by state of its first mesh. Bounds of all meshes are resolved here on the main thread,
+     * submit may run on render threads
+     */
+    @Override
+    public long getSortKey(Vector3fc eye) {
+        var current = model;
+        if (current != null && !current.getMeshes().isEmpty()) {
+            for (var mesh : current.getMeshes()) {
+                mesh.getWorldBounds();
+            }
+            return current.getMeshes().get(0).getSortKey(eye);
+        }
+        return placeholder.getSortKey(eye);
+    }
+
+    /**
+     * Every mesh selects its own level
+     * @return coarsest selected level
+     */
+    @Override
+    public int selectLod(Vector3fc eye, float projectionScale) {
+        var current = model;
+        if (current == null) return 0;
+
+        int lod = 0;
+        for (var mesh : current.getMeshes()) {
+            lod = Math.max(lod, mesh.selectLod(eye, projectionScale));
+        }
+        return lod;
+    }
+
+    @Override
+    public void submit(long encoder, int view, int depth) {
+        if (model != null) {
+            for (var mesh : model.getMeshes()) {
+                mesh.submit(encoder, view, depth);
+            }
+        } else {
+            placeholder.submit(encoder, view, depth);
+        }
+    }
+
+    public void dispose() {
+        // model which is still loading is disposed when it arrives
+        disposed = true;
+        placeholder.dispose();
+        if (model != null) {
+            model.dispose();
+        }
+        transform.dispose();
+    }
+}
@@ -0,0 +1,192 @@
+package org.opengame.engine.scene;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.joml.Matrix4x3f;
+import org.joml.Matrix4x3fc;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Node of the transform hierarchy. World matrix is parent world matrix multiplied by the local one
+ * (translation, rotation around x, y and z axes, scale).
+ * Changes only mark the node and its subtree dirty, world matrices are recomputed lazily when requested,
+ * so nodes which don't move cost nothing per frame. Recomputed world matrix is written to
+ * {@link TransformStorage}. Must be changed on the main thread.
+ */
+public class TransformNode {
+    @Getter
+    private TransformNode parent;
+    private final List<TransformNode> children = new ArrayList<>();
+
+    private final Vector3f position = new Vector3f();
+    private final Vector3f rotation = new Vector3f();
+    private final Vector3f scale = new Vector3f(1.0f);
+
+    private final Matrix4x3f local = new Matrix4x3f();
+    private final Matrix4x3f world = new Matrix4x3f();
+    private boolean localDirty = true;
+    /**
+     * If set, every node of the subtree is dirty as well
+     */
+    private boolean worldDirty = true;
+    /**
+     * Incremented on every world matrix change
+     */
+    @Getter
+    private int version;
+
+    @Getter
+    private final int slot;
+    /**
+     * Called when world matrix of the node becomes dirty
+     */
+    @Setter
+    private Runnable changeListener;
+    /**
+     * Storage slot is released, the node can't change anymore
+     */
+    private boolean disposed;
+
+    public TransformNode() {
+        slot = TransformStorage.allocate();
+    }
+
+    public Vector3fc getPosition() {
+        return position;
+    }
+
+    public Vector3fc getRotation() {
+        return rotation;
+    }
+
+    public Vector3fc getScale() {
+        return scale;
+    }
+
+    public TransformNode setPosition(Vector3fc position) {
+        this.position.set(position);
+        invalidateLocal();
+        return this;
+    }
+
+    /**
+     * @param rotation rotation angles around x, y and z axes in radians
+     * @return this
+     */
+    public TransformNode setRotation(Vector3fc rotation) {
+        this.rotation.set(rotation);
+        invalidateLocal();
+        return this;
+    }
+
+    public TransformNode setScale(Vector3fc scale) {
+        this.scale.set(scale);
+        invalidateLocal();
+        return this;
+    }
+
+    public List<TransformNode> getChildren() {
+        return Collections.unmodifiableList(children);
+    }
+
+    /**
+     * Attach node to new parent, local transform is kept
+     * @param parent new parent, null - root node
+     */
+    public void setParent(TransformNode parent) {
+        if (this.parent == parent) return;
+        if (disposed && parent != null) {
+            throw new IllegalStateException("Transform node is disposed");
+        }
+
+        for (var ancestor = parent; ancestor != null; ancestor = ancestor.parent) {
+            if (ancestor == this) {
+                throw new IllegalArgumentException("Transform node can't be attached to its own subtree");
+            }
+        }
+
+        if (this.parent != null) {
+            this.parent.children.remove(this);
+        }
+        this.parent = parent;
+        if (parent != null) {
+            parent.children.add(this);
+        }
+        invalidateWorld();
+    }
+
+    /**
+     * @return world matrix, recomputed if the node or any of its ancestors changed
+     */
+    public Matrix4x3fc getWorld() {
+        if (worldDirty) {
+            updateWorld();
+        }
+        return world;
+    }
+
+    /**
+     * @return address of the up to date 4x4 world matrix in transform storage
+     */
+    public long getWorldAddress() {
+        getWorld();
+        return TransformStorage.address(slot);
+    }
+
+    /**
+     * Detach from the hierarchy and release storage slot, children become roots
+     */
+    public void dispose() {
+        if (disposed) return;
+
+        setParent(null);
+        for (var child : new ArrayList<>(children)) {
+            child.setParent(null);
+        }
+        TransformStorage.free(slot);
+        disposed = true;
+    }
+
+    private void updateWorld() {
+        if (localDirty) {
+            local.translation(position).rotateXYZ(rotation).scale(scale);
+            localDirty = false;
+        }
+
+        if (parent == null) {
+            world.set(local);
+        } else {
+            parent.getWorld().mul(local, world);
+        }
+        worldDirty = false;
+        version++;
+        TransformStorage.put(slot, world);
+    }
+
+    private void invalidateLocal() {
+        if (disposed) {
+            // slot can already belong to another node
+            throw new IllegalStateException("Transform node is disposed");
+        }
+        localDirty = true;
+        invalidateWorld();
+    }
+
+    private void invalidateWorld() {
+        // dirty node has dirty subtree and its listeners were already notified
+        if (worldDirty) return;
+
+        worldDirty = true;
+        if (changeListener != null) {
+            changeListener.run();
+        }
+        for (var child : children) {
+            child.invalidateWorld();
+        }
+    }
+}
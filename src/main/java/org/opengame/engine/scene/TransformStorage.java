@@ -0,0 +1,69 @@
+package org.opengame.engine.scene;
+
+import org.joml.Matrix4x3fc;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import static org.lwjgl.system.MemoryUtil.*;
+
+/**
+ * World matrices of all transform nodes packed in one native buffer, 4x4 column major per slot,
+ * so they can be passed to bgfx without copies.
+ * Slots are allocated and freed on the main thread, matrix addresses are valid until the next allocation.
+ */
+public enum TransformStorage {
+    INSTANCE;
+
+    private static final int MATRIX_FLOATS = 16;
+    private static final int INITIAL_CAPACITY = 256;
+
+    private FloatBuffer matrices = memAllocFloat(INITIAL_CAPACITY * MATRIX_FLOATS);
+    private int capacity = INITIAL_CAPACITY;
+    private int[] freeSlots = new int[INITIAL_CAPACITY];
+    private int freeSlotCount;
+    private int slotCount;
+    /**
+     * World matrices recomputed since start
+     */
+    private long updateCount;
+
+    public static synchronized int allocate() {
+        var storage = INSTANCE;
+        if (storage.freeSlotCount > 0) {
+            return storage.freeSlots[--storage.freeSlotCount];
+        }
+
+        if (storage.slotCount == storage.capacity) {
+            storage.capacity *= 2;
+            storage.matrices = memRealloc(storage.matrices, storage.capacity * MATRIX_FLOATS);
+            storage.freeSlots = Arrays.copyOf(storage.freeSlots, storage.capacity);
+        }
+        return storage.slotCount++;
+    }
+
+    public static synchronized void free(int slot) {
+        INSTANCE.freeSlots[INSTANCE.freeSlotCount++] = slot;
+    }
+
+    static void put(int slot, Matrix4x3fc world) {
+        world.get4x4(slot * MATRIX_FLOATS, INSTANCE.matrices);
+        INSTANCE.updateCount++;
+    }
+
+    /**
+     * @param slot slot
+     * @return address of the 4x4 world matrix of the slot
+     */
+    public static long address(int slot) {
+        return memAddress(INSTANCE.matrices) + (long) slot * MATRIX_FLOATS * Float.BYTES;
+    }
+
+    public static synchronized int getSlotCount() {
+        return INSTANCE.slotCount - INSTANCE.freeSlotCount;
+    }
+
+    public static long getUpdateCount() {
+        return INSTANCE.updateCount;
+    }
+}